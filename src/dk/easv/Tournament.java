@@ -0,0 +1,226 @@
+package dk.easv;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.bot.ISearchTableBot;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.search.EndgameSolver;
+import dk.easv.bll.search.EndgameTable;
+import dk.easv.bll.search.OffHeapTranspositionTable;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays bot against bot from the command line, without JavaFX.
+ *
+ * Usage: Tournament bot1 bot2 [games] [threads] [timePerMove] [csvFile]
+ *
+ * Bots are class names in dk.easv.bll.bot or fully qualified class names.
+ * The bots take turns playing first, and the games are spread over the
+ * threads, each with its own bot instances. Every ISearchTableBot is given
+ * transposition and endgame tables of its own, so no bot sees the results of
+ * its opponent or of other games. Games played
+ * side by side still compete for the processors, and LazySmpBot and
+ * ParallelMctsBot use several threads for one move, so only use more threads
+ * than 1 with single-threaded bots and enough processors, else the bots get
+ * less search time than in the GUI. Defaults are 100 games, 1 thread and
+ * 1000 ms per move. The totals are printed at the end, and
+ * with a csv file every game is written to it as well. As in the simulator of
+ * the GUI, the system property uttt.adjudicate ends games as soon as their
+ * result is proven. A bot making an illegal move, returning no move or
+ * throwing an exception loses the game, and the tournament goes on.
+ */
+public class Tournament {
+
+    private static final int DEFAULT_GAMES = 100;
+    private static final int DEFAULT_TIME_PER_MOVE = 1000;
+    private static final long ADJUDICATE_NODES = 200_000;
+    private static final String BOT_PACKAGE = "dk.easv.bll.bot.";
+
+    private final Class<? extends IBot> bot1;
+    private final Class<? extends IBot> bot2;
+    private final int games;
+    private final int timePerMove;
+    private final boolean adjudicate = Boolean.getBoolean("uttt.adjudicate");
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private PrintWriter csv = null;
+    private String name1;
+    private String name2;
+    private int winsBot1 = 0;
+    private int winsBot2 = 0;
+    private int ties = 0;
+    private long moves = 0;
+
+    /**
+     * @param bot1 Class of the first bot, it plays first in the even games
+     * @param bot2 Class of the second bot
+     * @param games Number of games
+     * @param timePerMove Time per move in milliseconds
+     */
+    public Tournament(Class<? extends IBot> bot1, Class<? extends IBot> bot2, int games, int timePerMove) {
+        this.bot1 = bot1;
+        this.bot2 = bot2;
+        this.games = games;
+        this.timePerMove = timePerMove;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: Tournament bot1 bot2 [games] [threads] [timePerMove] [csvFile]");
+            System.exit(1);
+        }
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_GAMES;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int timePerMove = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_TIME_PER_MOVE;
+        Tournament tournament = new Tournament(botClass(args[0]), botClass(args[1]), games, timePerMove);
+        if (args.length > 5) {
+            try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(Paths.get(args[5])))) {
+                tournament.setCsv(csv);
+                tournament.run(threads);
+            }
+        }
+        else
+            tournament.run(threads);
+        System.out.println(tournament.getResults());
+    }
+
+    /**
+     * @param csv Writer receiving a header and one line per game, or null for none
+     */
+    public void setCsv(PrintWriter csv) {
+        this.csv = csv;
+    }
+
+    /**
+     * Plays all games and waits for them to finish.
+     * @param threads Number of games played at the same time
+     */
+    public void run(int threads) throws Exception {
+        if (csv != null)
+            csv.println("game,player0,player1,winner,moves,milliseconds");
+        Thread[] workers = new Thread[Math.max(1, Math.min(threads, games))];
+        Exception[] failure = new Exception[1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    playGames();
+                }
+                catch (Exception ex) {
+                    failure[0] = ex;
+                }
+            }, "Tournament " + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure[0] != null)
+            throw failure[0];
+    }
+
+    /**
+     * @return The totals, seen from the first bot
+     */
+    public synchronized String getResults() {
+        int played = winsBot1 + winsBot2 + ties;
+        return name1 + " vs " + name2 + " | w/w/t " + winsBot1 + "/" + winsBot2 + "/" + ties
+                + String.format(" | score %.1f%% | %.1f moves per game",
+                        played == 0 ? 0 : 100.0 * (winsBot1 + ties / 2.0) / played,
+                        played == 0 ? 0 : (double) moves / played);
+    }
+
+    // Plays games until all are taken, with bots of its own
+    private void playGames() throws ReflectiveOperationException {
+        IBot one = newBot(bot1);
+        IBot two = newBot(bot2);
+        synchronized (this) {
+            name1 = one.getBotName();
+            name2 = two.getBotName();
+        }
+        EndgameSolver endgame = null;
+        if (adjudicate) {
+            endgame = new EndgameSolver(EndgameTable.withSharedSize());
+            endgame.setNodeBudget(ADJUDICATE_NODES);
+        }
+        for (int game = nextGame.getAndIncrement(); game < games; game = nextGame.getAndIncrement()) {
+            boolean swapped = game % 2 == 1;
+            long start = System.currentTimeMillis();
+            GameState state = new GameState();
+            state.setTimePerMove(timePerMove);
+            GameManager manager = new GameManager(state, swapped ? two : one, swapped ? one : two);
+            int winner = play(state, manager, endgame);
+            recordResult(game, swapped, winner, state.getMoveNumber(), System.currentTimeMillis() - start);
+        }
+    }
+
+    // Plays a game to the end, returns the winning player or IField.TIED
+    private int play(GameState state, GameManager manager, EndgameSolver endgame) {
+        while (manager.getGameOver() == GameManager.GameOverState.Active
+                && state.getField().hasAvailableMoves()) {
+            int player = manager.getCurrentPlayer();
+            boolean legal;
+            try {
+                legal = manager.updateGame();
+            }
+            catch (RuntimeException ex) {
+                System.err.println("Player " + player + " failed in move " + state.getMoveNumber() + ": " + ex);
+                return 1 - player;
+            }
+            if (!legal) {
+                System.err.println("Illegal move by player " + player + " in move " + state.getMoveNumber());
+                return 1 - player;
+            }
+            if (manager.getGameOver() == GameManager.GameOverState.Win)
+                return player;
+            if (endgame != null && manager.getGameOver() == GameManager.GameOverState.Active) {
+                int proven = endgame.adjudicate(state, Long.MAX_VALUE);
+                if (proven != IField.NO_OWNER)
+                    return proven;
+            }
+        }
+        return IField.TIED;
+    }
+
+    // Makes a bot with tables of its own, which are freed with the bot after the run
+    private static IBot newBot(Class<? extends IBot> clazz) throws ReflectiveOperationException {
+        IBot bot = clazz.getDeclaredConstructor().newInstance();
+        if (bot instanceof ISearchTableBot) {
+            ISearchTableBot searcher = (ISearchTableBot) bot;
+            searcher.setTables(searcher.usesTranspositionTable() ? OffHeapTranspositionTable.withSharedSize() : null,
+                    EndgameTable.withSharedSize());
+        }
+        return bot;
+    }
+
+    private synchronized void recordResult(int game, boolean swapped, int winner, int moveCount, long millis) {
+        if (winner == IField.TIED)
+            ties++;
+        else if (winner == 0 ^ swapped)
+            winsBot1++;
+        else
+            winsBot2++;
+        moves += moveCount;
+        if (csv != null) {
+            csv.println(game + "," + (swapped ? name2 : name1) + "," + (swapped ? name1 : name2) + ","
+                    + (winner == IField.TIED ? "tie" : "player" + winner) + "," + moveCount + "," + millis);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends IBot> botClass(String name) throws ClassNotFoundException {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(name.indexOf('.') < 0 ? BOT_PACKAGE + name : name);
+        }
+        catch (ClassNotFoundException ex) {
+            throw new ClassNotFoundException("No bot named " + name, ex);
+        }
+        if (!IBot.class.isAssignableFrom(clazz))
+            throw new IllegalArgumentException(name + " is not an IBot");
+        return (Class<? extends IBot>) clazz;
+    }
+}
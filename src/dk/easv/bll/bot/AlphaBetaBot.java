@@ -0,0 +1,72 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.TimeManager;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.search.AlphaBetaSearch;
+import dk.easv.bll.search.EndgameSolver;
+import dk.easv.bll.search.EndgameTable;
+import dk.easv.bll.search.ITranspositionTable;
+import dk.easv.bll.search.OffHeapTranspositionTable;
+import dk.easv.bll.search.OpeningBook;
+
+/**
+ * Alpha-beta bot.
+ * Searches deeper and deeper until the time per move is nearly used, and plays
+ * the best move of the deepest search that completed. Search results are kept
+ * in the transposition table shared by all search bots, which is only taken
+ * on the first search, so a bot that never plays does not allocate it. As
+ * an ISearchTableBot it can be given tables of its own instead.
+ */
+public class AlphaBetaBot implements ISearchTableBot {
+
+    private static final String BOTNAME = "AlphaBeta Bot";
+    private final AlphaBetaSearch search = new AlphaBetaSearch();
+    private final EndgameSolver endgame = new EndgameSolver();
+    private final TimeManager time = new TimeManager();
+
+    /**
+     * Makes a turn. Plays from the opening book when the position is in it,
+     * see OpeningBook.shared(). Otherwise searches until the deadline of the
+     * TimeManager, which leaves a safety margin of the time per move. Near
+     * the end of the game a quarter of the time is first spent trying to
+     * solve the position.
+     *
+     * @return The book move, a proven winning or drawing move, or else the
+     * best move of the last completed search depth.
+     */
+    @Override
+    public IMove doMove(IGameState state) {
+        long deadline = time.start(state);
+        try {
+            IMove booked = OpeningBook.shared().lookup(state);
+            if (booked != null)
+                return booked;
+            IMove proven = endgame.findProvenMove(state, time.getDeadline(0.25));
+            if (proven != null)
+                return proven;
+            if (search.getTranspositionTable() == null)
+                search.setTranspositionTable(OffHeapTranspositionTable.shared());
+            return search.search(state, deadline);
+        }
+        finally {
+            time.finish();
+        }
+    }
+
+    @Override
+    public String getBotName() {
+        return BOTNAME;
+    }
+
+    @Override
+    public void setTables(ITranspositionTable transpositionTable, EndgameTable endgameTable) {
+        search.setTranspositionTable(transpositionTable);
+        endgame.setTable(endgameTable);
+    }
+
+    @Override
+    public boolean usesTranspositionTable() {
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+
+/**
+ * A bot that searches in the background and always has a best move so far.
+ *
+ * Instead of calling doMove, the GameManager starts the search, waits until
+ * the time per move has passed or the bot is done, stops the search and plays
+ * the best move found. The bot does not need a safety margin of its own, and
+ * every move takes the same time.
+ */
+public interface IAnytimeBot extends IBot {
+
+    /**
+     * Starts searching the position in the background. Must return right away.
+     *
+     * @param state Copy of the position, the bot may keep it
+     */
+    void startSearch(IGameState state);
+
+    /**
+     * @return Returns true while the search is running, false when the bot
+     * has stopped or finished early, e.g. with a proven move.
+     */
+    boolean isSearching();
+
+    /**
+     * Can be called at any moment after startSearch, also while searching.
+     *
+     * @return The best legal move found so far.
+     */
+    IMove getBestMove();
+
+    /**
+     * Stops the search, and returns when it has stopped.
+     */
+    void stopSearch();
+
+}
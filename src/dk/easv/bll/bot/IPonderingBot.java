@@ -0,0 +1,32 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.game.IGameState;
+
+/**
+ * A bot that keeps thinking while the opponent is deciding.
+ *
+ * In Human vs Bot games the GameManager calls startPondering after every
+ * move of the bot, and stopPondering as soon as the human's move is played or
+ * the game ends. The bot can then carry the work over to its next doMove, e.g.
+ * by keeping the part of its search tree below the move that was played.
+ *
+ * Pondering is not used in Bot vs Bot games, where it would take processor
+ * time from the bot that is thinking.
+ */
+public interface IPonderingBot extends IBot {
+
+    /**
+     * Starts thinking in the background about the position where the opponent
+     * is to move. Must return right away.
+     *
+     * @param state Copy of the position, the bot may keep it
+     */
+    void startPondering(IGameState state);
+
+    /**
+     * Stops thinking in the background, and returns when it has stopped.
+     * Does nothing when the bot is not pondering.
+     */
+    void stopPondering();
+
+}
@@ -0,0 +1,30 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.search.EndgameTable;
+import dk.easv.bll.search.ITranspositionTable;
+
+/**
+ * A bot that keeps search results in tables, by default the ones shared by
+ * all bots, see OffHeapTranspositionTable.shared() and EndgameTable.shared().
+ *
+ * Whoever runs the bot can give it tables of its own instead, e.g. a
+ * tournament, so the bot does not see the results of its opponent or of
+ * games played side by side.
+ */
+public interface ISearchTableBot extends IBot {
+
+    /**
+     * Makes the following moves use the given tables. Call it between moves.
+     *
+     * @param transpositionTable Transposition table, or null for the shared one.
+     * Ignored by bots that do not use one.
+     * @param endgameTable Endgame table, or null for the shared one
+     */
+    void setTables(ITranspositionTable transpositionTable, EndgameTable endgameTable);
+
+    /**
+     * @return Returns true when the bot uses a transposition table, otherwise returns false.
+     */
+    boolean usesTranspositionTable();
+
+}
@@ -0,0 +1,79 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.TimeManager;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.search.EndgameSolver;
+import dk.easv.bll.search.EndgameTable;
+import dk.easv.bll.search.ITranspositionTable;
+import dk.easv.bll.search.OffHeapTranspositionTable;
+import dk.easv.bll.search.OpeningBook;
+import dk.easv.bll.search.ParallelAlphaBetaSearch;
+
+/**
+ * Parallel alpha-beta bot.
+ * Runs an alpha-beta search on every processor, all sharing one transposition
+ * table. The number of threads can be set with the system property
+ * uttt.smp.threads. The table is the one shared by all search bots, see
+ * OffHeapTranspositionTable.shared(). It is only taken on the first search,
+ * so a bot that never plays does not allocate it. As an ISearchTableBot it
+ * can be given tables of its own instead.
+ */
+public class LazySmpBot implements ISearchTableBot {
+
+    private static final String BOTNAME = "Lazy SMP Bot";
+    // Made on the first search, with the table given to setTables or else the shared one
+    private ParallelAlphaBetaSearch search = null;
+    private ITranspositionTable table = null;
+    private final EndgameSolver endgame = new EndgameSolver();
+    private final TimeManager time = new TimeManager();
+
+    /**
+     * Makes a turn. Plays from the opening book when the position is in it,
+     * see OpeningBook.shared(). Otherwise searches until the deadline of the
+     * TimeManager, which leaves a safety margin of the time per move. Near
+     * the end of the game a quarter of the time is first spent trying to
+     * solve the position.
+     *
+     * @return The book move, a proven winning or drawing move, or else the
+     * best move of the main search thread.
+     */
+    @Override
+    public IMove doMove(IGameState state) {
+        long deadline = time.start(state);
+        try {
+            IMove booked = OpeningBook.shared().lookup(state);
+            if (booked != null)
+                return booked;
+            IMove proven = endgame.findProvenMove(state, time.getDeadline(0.25));
+            if (proven != null)
+                return proven;
+            if (search == null) {
+                search = new ParallelAlphaBetaSearch(
+                        Math.max(1, Integer.getInteger("uttt.smp.threads", Runtime.getRuntime().availableProcessors())),
+                        table != null ? table : OffHeapTranspositionTable.shared());
+            }
+            return search.search(state, deadline);
+        }
+        finally {
+            time.finish();
+        }
+    }
+
+    @Override
+    public String getBotName() {
+        return BOTNAME;
+    }
+
+    @Override
+    public void setTables(ITranspositionTable transpositionTable, EndgameTable endgameTable) {
+        table = transpositionTable;
+        search = null;
+        endgame.setTable(endgameTable);
+    }
+
+    @Override
+    public boolean usesTranspositionTable() {
+        return true;
+    }
+}
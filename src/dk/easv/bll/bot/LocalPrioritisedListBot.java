@@ -29,16 +29,16 @@ public class LocalPrioritisedListBot implements IBot {
         //Find macroboard to play in
         for (int[] move : preferredMoves)
         {
-            if(state.getField().getMacroboard()[move[0]][move[1]].equals(IField.AVAILABLE_FIELD))
+            if(state.getField().isInActiveMicroboard(move[0]*3, move[1]*3))
             {
                 //find move to play
                 for (int[] selectedMove : preferredMoves)
                 {
                     int x = move[0]*3 + selectedMove[0];
                     int y = move[1]*3 + selectedMove[1];
-                    if(state.getField().getBoard()[x][y].equals(IField.EMPTY_FIELD))
+                    if(state.getField().getCellOwner(x,y) == IField.NO_OWNER)
                     {
-                        return new Move(x,y);
+                        return Move.of(x,y);
                     }
                 }
             }
@@ -0,0 +1,177 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.TimeManager;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.search.EndgameSolver;
+import dk.easv.bll.search.EndgameTable;
+import dk.easv.bll.search.ITranspositionTable;
+import dk.easv.bll.search.MonteCarloTreeSearch;
+import dk.easv.bll.search.OpeningBook;
+import dk.easv.bll.search.ProofNumberSearch;
+
+/**
+ * Monte Carlo Tree Search bot.
+ * Builds a UCT tree of random playouts within the time per move, and keeps the
+ * part of the tree below the opponent's reply for its next move.
+ * Against a human it keeps growing the tree while the human is thinking.
+ * As an IAnytimeBot the game can take its most visited move at any time.
+ */
+public class MctsBot implements IPonderingBot, IAnytimeBot, ISearchTableBot {
+
+    private static final String BOTNAME = "MCTS Bot";
+    private static final int PONDER_MOVES = 5;
+    private final MonteCarloTreeSearch search;
+    private final EndgameSolver endgame = new EndgameSolver();
+    private final ProofNumberSearch proofNumbers = new ProofNumberSearch();
+    private final TimeManager time = new TimeManager();
+    // Search running in the background, for pondering or startSearch
+    private Thread background = null;
+    // Book or proven move found by startSearch, played instead of the tree's move
+    private volatile IMove fixedMove = null;
+
+    public MctsBot() {
+        this(1);
+    }
+
+    /**
+     * @param threads Number of threads searching the same tree
+     */
+    public MctsBot(int threads) {
+        search = new MonteCarloTreeSearch(threads);
+    }
+
+    /**
+     * Makes a turn. Plays from the opening book when the position is in it,
+     * see OpeningBook.shared(). Otherwise searches until the deadline of the
+     * TimeManager, which leaves a safety margin of the time per move. The
+     * first quarter of the time is spent trying to solve the position near
+     * the end of the game, and else to prove a forced win with a
+     * proof-number search, which random playouts are slow to find.
+     *
+     * @return The book move, a proven winning or drawing move, or else the
+     * most visited move of the search tree.
+     */
+    @Override
+    public IMove doMove(IGameState state) {
+        stopBackground();
+        long deadline = time.start(state);
+        try {
+            IMove booked = OpeningBook.shared().lookup(state);
+            if (booked != null)
+                return booked;
+            IMove proven = findProvenMove(state, time.getDeadline(0.25));
+            if (proven != null)
+                return proven;
+            search.setPosition(state);
+            search.search(deadline);
+            return search.getBestMove();
+        }
+        finally {
+            time.finish();
+        }
+    }
+
+    /**
+     * Searches like doMove, but in the background and without a deadline of
+     * its own beyond the time per move, the game stops it.
+     */
+    @Override
+    public void startSearch(IGameState state) {
+        stopBackground();
+        fixedMove = OpeningBook.shared().lookup(state);
+        if (fixedMove != null)
+            return;
+        long start = System.nanoTime();
+        long budget = state.getTimePerMove() * 1_000_000L;
+        search.setPosition(state);
+        startBackground(() -> {
+            fixedMove = findProvenMove(state, start + budget / 4);
+            if (fixedMove == null)
+                search.search(start + budget);
+        }, "MCTS search");
+    }
+
+    @Override
+    public boolean isSearching() {
+        return background != null && background.isAlive();
+    }
+
+    @Override
+    public IMove getBestMove() {
+        IMove move = fixedMove;
+        return move != null ? move : search.getBestMove();
+    }
+
+    @Override
+    public void stopSearch() {
+        stopBackground();
+    }
+
+    /**
+     * Searches the opponent's position in the background, for at most
+     * PONDER_MOVES times the time per move so the tree does not grow without
+     * limit while a human takes a break. The next doMove keeps the subtree
+     * below the move the opponent played.
+     */
+    @Override
+    public void startPondering(IGameState state) {
+        stopBackground();
+        long deadline = System.nanoTime() + PONDER_MOVES * state.getTimePerMove() * 1_000_000L;
+        search.setPosition(state);
+        startBackground(() -> search.search(deadline), "MCTS ponder");
+    }
+
+    @Override
+    public void stopPondering() {
+        stopBackground();
+    }
+
+    @Override
+    public String getBotName() {
+        return BOTNAME;
+    }
+
+    /**
+     * Only the endgame table is used, the tree search has no transposition table.
+     */
+    @Override
+    public void setTables(ITranspositionTable transpositionTable, EndgameTable endgameTable) {
+        stopBackground();
+        endgame.setTable(endgameTable);
+    }
+
+    @Override
+    public boolean usesTranspositionTable() {
+        return false;
+    }
+
+    private IMove findProvenMove(IGameState state, long deadline) {
+        IMove proven = endgame.findProvenMove(state, deadline);
+        return proven != null ? proven : proofNumbers.findWinningMove(state, deadline);
+    }
+
+    private void startBackground(Runnable task, String name) {
+        background = new Thread(task, name);
+        background.setDaemon(true);
+        background.start();
+    }
+
+    // Stops the solvers and the tree search of the background thread, and waits for it
+    private void stopBackground() {
+        if (background == null)
+            return;
+        endgame.stop();
+        proofNumbers.stop();
+        search.stop();
+        try {
+            background.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        background = null;
+        endgame.resume();
+        proofNumbers.resume();
+    }
+}
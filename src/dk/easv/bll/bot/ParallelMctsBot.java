@@ -0,0 +1,19 @@
+package dk.easv.bll.bot;
+
+/**
+ * MctsBot searching one shared tree with a thread per available processor.
+ * The number of threads can be set with the system property uttt.mcts.threads.
+ */
+public class ParallelMctsBot extends MctsBot {
+
+    private static final String BOTNAME = "Parallel MCTS Bot";
+
+    public ParallelMctsBot() {
+        super(Integer.getInteger("uttt.mcts.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Override
+    public String getBotName() {
+        return BOTNAME;
+    }
+}
@@ -0,0 +1,381 @@
+package dk.easv.bll.field;
+
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Field that keeps the board in primitive bitmasks instead of Strings.
+ *
+ * Every microboard is a single int, the cells of player 0 in bits 0-8 and the
+ * cells of player 1 in bits 9-17. A cell (x,y) lives in microboard
+ * (x/3)*3 + y/3 at bit (x%3)*3 + y%3. The macroboard is kept as 9-bit masks of
+ * won, tied and active microboards, using the same microboard index.
+ *
+ * getBoard() and getMacroboard() are compatibility views, built into new
+ * arrays on the first call after the field changed and returned again until
+ * the next change, so reading them cell by cell in a loop is cheap. Treat
+ * them as read-only: writing into those arrays does not change the field, use
+ * setBoard/setMacroboard or the primitive setters for that.
+ */
+public class BitboardField implements IField {
+
+    static final int CELLS = 0x1FF;
+
+    private final int[] cells = new int[9];
+    private final int[] won = new int[2];
+    private int tied;
+    private int active;
+    private long zobristKey;
+
+    // Views of getBoard and getMacroboard, null when the field changed since they were built
+    private String[][] board;
+    private String[][] macroBoard;
+
+    public BitboardField() {
+        clearBoard();
+    }
+
+    /**
+     * Creates a copy of the given field.
+     * @param field The field to copy
+     */
+    public BitboardField(IField field) {
+        copyFrom(field);
+    }
+
+    /**
+     * Overwrites this field with the content of the given field.
+     * @param field The field to copy
+     */
+    public void copyFrom(IField field) {
+        if (field instanceof BitboardField) {
+            BitboardField other = (BitboardField) field;
+            System.arraycopy(other.cells, 0, cells, 0, 9);
+            won[0] = other.won[0];
+            won[1] = other.won[1];
+            tied = other.tied;
+            active = other.active;
+            zobristKey = other.zobristKey;
+        }
+        else {
+            for (int i = 0; i < 9; i++) {
+                cells[i] = 0;
+            }
+            for (int x = 0; x < 9; x++)
+                for (int y = 0; y < 9; y++) {
+                    int owner = field.getCellOwner(x, y);
+                    if (owner != NO_OWNER)
+                        cells[macroIndex(x, y)] |= 1 << (localIndex(x, y) + 9 * owner);
+                }
+            won[0] = 0;
+            won[1] = 0;
+            tied = 0;
+            for (int i = 0; i < 9; i++) {
+                int state = field.getMicroboardState(i / 3, i % 3);
+                if (state == TIED)
+                    tied |= 1 << i;
+                else if (state != NO_OWNER)
+                    won[state] |= 1 << i;
+            }
+            active = field.getActiveMicroboards();
+            zobristKey = Zobrist.compute(this);
+        }
+        board = null;
+        macroBoard = null;
+    }
+
+    @Override
+    public void clearBoard() {
+        for (int i = 0; i < 9; i++) {
+            cells[i] = 0;
+        }
+        won[0] = 0;
+        won[1] = 0;
+        tied = 0;
+        active = CELLS;
+        zobristKey = Zobrist.active(active);
+        board = null;
+        macroBoard = null;
+    }
+
+    @Override
+    public List<IMove> getAvailableMoves() {
+        List<IMove> availMoves = new ArrayList<>();
+
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                int macro = macroIndex(x, y);
+                if ((active & 1 << macro) != 0 && (occupied(macro) & 1 << localIndex(x, y)) == 0)
+                    availMoves.add(Move.of(x, y));
+            }
+
+        return availMoves;
+    }
+
+    @Override
+    public int getAvailableMoves(int[] moves) {
+        int count = 0;
+        for (int macro = 0; macro < 9; macro++) {
+            if ((active & 1 << macro) == 0)
+                continue;
+            int x0 = (macro / 3) * 3;
+            int y0 = (macro % 3) * 3;
+            int free = ~occupied(macro) & CELLS;
+            while (free != 0) {
+                int cell = Integer.numberOfTrailingZeros(free);
+                free &= free - 1;
+                moves[count++] = (x0 + cell / 3) * 9 + y0 + cell % 3;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int countAvailableMoves() {
+        int count = 0;
+        for (int macro = 0; macro < 9; macro++) {
+            if ((active & 1 << macro) != 0)
+                count += Integer.bitCount(~occupied(macro) & CELLS);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean hasAvailableMoves() {
+        for (int macro = 0; macro < 9; macro++) {
+            if ((active & 1 << macro) != 0 && occupied(macro) != CELLS)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String getPlayerId(int column, int row) {
+        int owner = getCellOwner(column, row);
+        return owner == NO_OWNER ? EMPTY_FIELD : playerId(owner);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int i = 0; i < 9; i++) {
+            if (cells[i] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isFull() {
+        for (int i = 0; i < 9; i++) {
+            if (occupied(i) != CELLS)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Boolean isInActiveMicroboard(int x, int y) {
+        if (x < 0 || 9 <= x || y < 0 || 9 <= y)
+            return false;
+        return (active & 1 << macroIndex(x, y)) != 0;
+    }
+
+    /**
+     * {@inheritDoc} The board is built from the bitboards on the first call
+     * after the field changed, and the same array is returned until the next change.
+     */
+    @Override
+    public String[][] getBoard() {
+        if (board == null) {
+            String[][] view = new String[9][9];
+            for (int x = 0; x < 9; x++)
+                for (int y = 0; y < 9; y++) {
+                    view[x][y] = getPlayerId(x, y);
+                }
+            board = view;
+        }
+        return board;
+    }
+
+    /**
+     * {@inheritDoc} The macroboard is built from the bitboards on the first call
+     * after the field changed, and the same array is returned until the next change.
+     */
+    @Override
+    public String[][] getMacroboard() {
+        if (macroBoard == null) {
+            String[][] view = new String[3][3];
+            for (int i = 0; i < 9; i++) {
+                String value;
+                if ((won[0] & 1 << i) != 0)
+                    value = playerId(0);
+                else if ((won[1] & 1 << i) != 0)
+                    value = playerId(1);
+                else if ((tied & 1 << i) != 0)
+                    value = TIE_FIELD;
+                else if ((active & 1 << i) != 0)
+                    value = AVAILABLE_FIELD;
+                else
+                    value = EMPTY_FIELD;
+                view[i / 3][i % 3] = value;
+            }
+            macroBoard = view;
+        }
+        return macroBoard;
+    }
+
+    @Override
+    public void setBoard(String[][] board) {
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                setCellOwner(x, y, ownerOf(board[x][y]));
+            }
+    }
+
+    @Override
+    public void setMacroboard(String[][] macroboard) {
+        int mask = 0;
+        for (int i = 0; i < 9; i++) {
+            String value = macroboard[i / 3][i % 3];
+            setMicroboardState(i / 3, i % 3, value.equals(TIE_FIELD) ? TIED : ownerOf(value));
+            if (value.equals(AVAILABLE_FIELD))
+                mask |= 1 << i;
+        }
+        setActiveMicroboards(mask);
+    }
+
+    @Override
+    public int getCellOwner(int x, int y) {
+        int cell = 1 << localIndex(x, y);
+        int micro = cells[macroIndex(x, y)];
+        if ((micro & cell) != 0)
+            return 0;
+        if ((micro & cell << 9) != 0)
+            return 1;
+        return NO_OWNER;
+    }
+
+    @Override
+    public void setCellOwner(int x, int y, int player) {
+        int macro = macroIndex(x, y);
+        int cell = 1 << localIndex(x, y);
+        int owner = getCellOwner(x, y);
+        if (owner != NO_OWNER)
+            zobristKey ^= Zobrist.cell(owner, x, y);
+        int micro = cells[macro] & ~(cell | cell << 9);
+        if (player != NO_OWNER) {
+            micro |= cell << 9 * player;
+            zobristKey ^= Zobrist.cell(player, x, y);
+        }
+        cells[macro] = micro;
+        board = null;
+    }
+
+    @Override
+    public int getMicroboardState(int macroX, int macroY) {
+        int bit = 1 << (macroX * 3 + macroY);
+        if ((won[0] & bit) != 0)
+            return 0;
+        if ((won[1] & bit) != 0)
+            return 1;
+        if ((tied & bit) != 0)
+            return TIED;
+        return NO_OWNER;
+    }
+
+    @Override
+    public void setMicroboardState(int macroX, int macroY, int state) {
+        int bit = 1 << (macroX * 3 + macroY);
+        won[0] &= ~bit;
+        won[1] &= ~bit;
+        tied &= ~bit;
+        if (state == TIED)
+            tied |= bit;
+        else if (state != NO_OWNER)
+            won[state] |= bit;
+        if (state != NO_OWNER && (active & bit) != 0) {
+            active &= ~bit;
+            zobristKey ^= Zobrist.active(bit);
+        }
+        macroBoard = null;
+    }
+
+    @Override
+    public int getCellMask(int macroX, int macroY, int player) {
+        return cells[macroX * 3 + macroY] >>> 9 * player & CELLS;
+    }
+
+    @Override
+    public int getWinningCells(int macroX, int macroY, int player) {
+        int macro = macroX * 3 + macroY;
+        if (((won[0] | won[1] | tied) & 1 << macro) != 0)
+            return 0;
+        int own = cells[macro] >>> 9 * player & CELLS;
+        int other = cells[macro] >>> 9 * (1 - player) & CELLS;
+        return WinOracle.winningCells(own, other);
+    }
+
+    @Override
+    public int getBlockingCells(int macroX, int macroY, int player) {
+        return getWinningCells(macroX, macroY, 1 - player);
+    }
+
+    @Override
+    public int getMicroboardMask(int state) {
+        if (state == TIED)
+            return tied;
+        if (state == NO_OWNER)
+            return ~(won[0] | won[1] | tied) & CELLS;
+        return won[state];
+    }
+
+    @Override
+    public int getActiveMicroboards() {
+        return active;
+    }
+
+    @Override
+    public void setActiveMicroboards(int mask) {
+        mask &= CELLS & ~(won[0] | won[1] | tied);
+        zobristKey ^= Zobrist.active(active ^ mask);
+        active = mask;
+        macroBoard = null;
+    }
+
+    @Override
+    public long getZobristKey() {
+        return zobristKey;
+    }
+
+    /**
+     * @param macro Microboard index, macroX*3 + macroY
+     * @return 9-bit mask of the occupied cells in the microboard
+     */
+    int occupied(int macro) {
+        int micro = cells[macro];
+        return (micro | micro >>> 9) & CELLS;
+    }
+
+    static int macroIndex(int x, int y) {
+        return (x / 3) * 3 + y / 3;
+    }
+
+    static int localIndex(int x, int y) {
+        return (x % 3) * 3 + y % 3;
+    }
+
+    private static String playerId(int player) {
+        return player == 0 ? "0" : "1";
+    }
+
+    private static int ownerOf(String value) {
+        switch (value) {
+            case "0": return 0;
+            case "1": return 1;
+            default: return NO_OWNER;
+        }
+    }
+}
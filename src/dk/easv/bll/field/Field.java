@@ -35,13 +35,46 @@ public class Field implements IField{
         for (int i = 0; i < board.length; i++)
             for (int k = 0; k < board[i].length; k++) {
                 if(isInActiveMicroboard(i,k) && board[i][k].equals(EMPTY_FIELD)) {
-                    availMoves.add(new Move(i,k));
+                    availMoves.add(Move.of(i,k));
                 }
         }
 
         return availMoves;
     }
 
+    @Override
+    public int getAvailableMoves(int[] moves) {
+        int count = 0;
+        for (int i = 0; i < board.length; i++)
+            for (int k = 0; k < board[i].length; k++) {
+                if(isInActiveMicroboard(i,k) && board[i][k].equals(EMPTY_FIELD)) {
+                    moves[count++] = i * 9 + k;
+                }
+            }
+        return count;
+    }
+
+    @Override
+    public int countAvailableMoves() {
+        int count = 0;
+        for (int i = 0; i < board.length; i++)
+            for (int k = 0; k < board[i].length; k++) {
+                if(isInActiveMicroboard(i,k) && board[i][k].equals(EMPTY_FIELD))
+                    count++;
+            }
+        return count;
+    }
+
+    @Override
+    public boolean hasAvailableMoves() {
+        for (int i = 0; i < board.length; i++)
+            for (int k = 0; k < board[i].length; k++) {
+                if(isInActiveMicroboard(i,k) && board[i][k].equals(EMPTY_FIELD))
+                    return true;
+            }
+        return false;
+    }
+
     @Override
     public String getPlayerId(int column, int row) {
         return board[column][row];
@@ -106,4 +139,102 @@ public class Field implements IField{
             }
         }
     }
+
+    @Override
+    public int getCellOwner(int x, int y) {
+        return ownerOf(board[x][y]);
+    }
+
+    @Override
+    public void setCellOwner(int x, int y, int player) {
+        board[x][y] = player == NO_OWNER ? EMPTY_FIELD : String.valueOf(player);
+    }
+
+    @Override
+    public int getMicroboardState(int macroX, int macroY) {
+        String value = macroBoard[macroX][macroY];
+        if (value.equals(TIE_FIELD))
+            return TIED;
+        return ownerOf(value);
+    }
+
+    @Override
+    public void setMicroboardState(int macroX, int macroY, int state) {
+        if (state == TIED)
+            macroBoard[macroX][macroY] = TIE_FIELD;
+        else if (state != NO_OWNER)
+            macroBoard[macroX][macroY] = String.valueOf(state);
+        else if (!macroBoard[macroX][macroY].equals(AVAILABLE_FIELD))
+            macroBoard[macroX][macroY] = EMPTY_FIELD;
+    }
+
+    @Override
+    public int getCellMask(int macroX, int macroY, int player) {
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if (getCellOwner(macroX * 3 + i, macroY * 3 + k) == player)
+                    mask |= 1 << (i * 3 + k);
+            }
+        return mask;
+    }
+
+    @Override
+    public int getWinningCells(int macroX, int macroY, int player) {
+        if (getMicroboardState(macroX, macroY) != NO_OWNER)
+            return 0;
+        int own = getCellMask(macroX, macroY, player);
+        int other = getCellMask(macroX, macroY, 1 - player);
+        return WinOracle.winningCells(own, other);
+    }
+
+    @Override
+    public int getBlockingCells(int macroX, int macroY, int player) {
+        return getWinningCells(macroX, macroY, 1 - player);
+    }
+
+    @Override
+    public int getMicroboardMask(int state) {
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if (getMicroboardState(i, k) == state)
+                    mask |= 1 << (i * 3 + k);
+            }
+        return mask;
+    }
+
+    @Override
+    public int getActiveMicroboards() {
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if (macroBoard[i][k].equals(AVAILABLE_FIELD))
+                    mask |= 1 << (i * 3 + k);
+            }
+        return mask;
+    }
+
+    @Override
+    public void setActiveMicroboards(int mask) {
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                String value = macroBoard[i][k];
+                if (value.equals(AVAILABLE_FIELD) || value.equals(EMPTY_FIELD))
+                    macroBoard[i][k] = (mask & 1 << (i * 3 + k)) != 0 ? AVAILABLE_FIELD : EMPTY_FIELD;
+            }
+    }
+
+    @Override
+    public long getZobristKey() {
+        return Zobrist.compute(this);
+    }
+
+    private static int ownerOf(String value) {
+        switch (value) {
+            case "0": return 0;
+            case "1": return 1;
+            default: return NO_OWNER;
+        }
+    }
 }
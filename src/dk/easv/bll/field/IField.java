@@ -11,6 +11,17 @@ public interface IField {
 
     String AVAILABLE_FIELD = "-1";
     String EMPTY_FIELD = ".";
+    String TIE_FIELD = "TIE";
+
+    /**
+     * Owner value of an empty cell or an undecided microboard.
+     */
+    int NO_OWNER = -1;
+
+    /**
+     * Microboard state of a microboard that ended in a tie.
+     */
+    int TIED = 2;
 
     /**
      * Clears the board
@@ -24,6 +35,24 @@ public interface IField {
      */
     List<IMove> getAvailableMoves();
 
+    /**
+     * Writes the available moves into a caller owned buffer, without allocating.
+     * Every move is stored as its cell index x*9 + y.
+     * @param moves Buffer receiving the moves, must hold at least 81 entries
+     * @return Number of moves written to the buffer
+     */
+    int getAvailableMoves(int[] moves);
+
+    /**
+     * @return Number of currently available moves
+     */
+    int countAvailableMoves();
+
+    /**
+     * @return Returns true when at least one move is available, otherwise returns false.
+     */
+    boolean hasAvailableMoves();
+
     /**
      * Returns the player id on given column and row
      * @param column Column
@@ -51,11 +80,16 @@ public interface IField {
     Boolean isInActiveMicroboard(int x, int y);
 
     /**
+     * Depending on the implementation this is the field's own array or a
+     * copy, so treat it as read-only: writes to it may not reach the field.
+     * Change the field with setBoard or setCellOwner instead.
      * @return the Board (the entire 9x9 board)
      */
     String[][] getBoard();
 
     /**
+     * Read-only like getBoard, change the field with setMacroboard,
+     * setMicroboardState or setActiveMicroboards instead.
      * @return the Macroboard (the overarching 3x3 board)
      */
     String[][] getMacroboard();
@@ -69,5 +103,95 @@ public interface IField {
      * @param macroboard the Macroboard to set (the overarching 3x3 board)
      */
     void setMacroboard(String[][] macroboard);
-    
+
+    /**
+     * Returns the owner of the cell on given column and row.
+     * @param x Column
+     * @param y Row
+     * @return 0 or 1 for the player occupying the cell, NO_OWNER if it is empty.
+     */
+    int getCellOwner(int x, int y);
+
+    /**
+     * Places a player on the cell on given column and row.
+     * @param x Column
+     * @param y Row
+     * @param player 0 or 1, or NO_OWNER to clear the cell.
+     */
+    void setCellOwner(int x, int y, int player);
+
+    /**
+     * Returns the state of a microboard in the macroboard (3x3).
+     * @param macroX Column in the macroboard
+     * @param macroY Row in the macroboard
+     * @return 0 or 1 if the microboard is won by that player, TIED if it ended
+     * in a tie, NO_OWNER if it is still undecided.
+     */
+    int getMicroboardState(int macroX, int macroY);
+
+    /**
+     * Sets the state of a microboard in the macroboard (3x3).
+     * A decided microboard is never available for play.
+     * @param macroX Column in the macroboard
+     * @param macroY Row in the macroboard
+     * @param state 0, 1, TIED or NO_OWNER
+     */
+    void setMicroboardState(int macroX, int macroY, int state);
+
+    /**
+     * Returns the cells of a player in one microboard as a 9-bit mask,
+     * bit (x%3)*3 + (y%3) is set for every cell (x,y) owned by the player.
+     * @param macroX Column in the macroboard
+     * @param macroY Row in the macroboard
+     * @param player 0 or 1
+     * @return 9-bit mask of the cells owned by the player, see WinOracle
+     */
+    int getCellMask(int macroX, int macroY, int player);
+
+    /**
+     * Returns the microboards in the given state as a 9-bit mask,
+     * bit (macroX*3 + macroY) is set for every matching microboard.
+     * @param state 0, 1, TIED or NO_OWNER
+     * @return 9-bit mask of the microboards in the given state, see WinOracle
+     */
+    int getMicroboardMask(int state);
+
+    /**
+     * Returns the empty cells of one microboard that win it for a player,
+     * computed from the cell masks without copying the board.
+     * @param macroX Column in the macroboard
+     * @param macroY Row in the macroboard
+     * @param player 0 or 1
+     * @return 9-bit mask of the winning cells, as in getCellMask, 0 when the microboard is decided
+     */
+    int getWinningCells(int macroX, int macroY, int player);
+
+    /**
+     * Returns the empty cells of one microboard where a player stops the
+     * opponent from winning it, the winning cells of the opponent.
+     * @param macroX Column in the macroboard
+     * @param macroY Row in the macroboard
+     * @param player 0 or 1
+     * @return 9-bit mask of the blocking cells, as in getCellMask, 0 when the microboard is decided
+     */
+    int getBlockingCells(int macroX, int macroY, int player);
+
+    /**
+     * @return 9-bit mask of the microboards available for play,
+     * bit (macroX*3 + macroY) is set when that microboard is available.
+     */
+    int getActiveMicroboards();
+
+    /**
+     * Marks the given undecided microboards as available for play, and all other
+     * undecided microboards as unavailable.
+     * @param mask 9-bit mask, bit (macroX*3 + macroY) for each available microboard.
+     */
+    void setActiveMicroboards(int mask);
+
+    /**
+     * @return Zobrist key of the occupied cells and the available microboards, see Zobrist
+     */
+    long getZobristKey();
+
 }
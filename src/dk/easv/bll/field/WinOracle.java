@@ -0,0 +1,95 @@
+package dk.easv.bll.field;
+
+/**
+ * Precomputed win and tie lookup for a single 3x3 board.
+ *
+ * A 3x3 board is described by a 9-bit mask where bit (x%3)*3 + y%3 is set for
+ * every cell (or microboard, for the macroboard) owned by one player. This is
+ * the layout returned by IField.getCellMask and IField.getMicroboardMask, so
+ * win detection is a single array lookup.
+ */
+public final class WinOracle {
+
+    /**
+     * Number of three-in-a-row lines, see line.
+     */
+    public static final int LINE_COUNT = 8;
+
+    // The three-in-a-row lines as 9-bit masks
+    private static final int[] LINES = {
+            0b000_000_111, 0b000_111_000, 0b111_000_000, // fixed x
+            0b001_001_001, 0b010_010_010, 0b100_100_100, // fixed y
+            0b100_010_001, 0b001_010_100};               // diagonal, anti diagonal
+
+    /**
+     * Mask with all 9 cells set.
+     */
+    public static final int FULL = 0x1FF;
+
+    private static final boolean[] WIN = new boolean[512];
+    // Cells that complete a line when added to the mask
+    private static final short[] THREATS = new short[512];
+
+    static {
+        for (int mask = 0; mask < 512; mask++) {
+            for (int line : LINES) {
+                if ((mask & line) == line) {
+                    WIN[mask] = true;
+                    break;
+                }
+            }
+        }
+        for (int mask = 0; mask < 512; mask++) {
+            for (int line : LINES) {
+                int missing = line & ~mask;
+                if (Integer.bitCount(missing) == 1)
+                    THREATS[mask] |= missing;
+            }
+        }
+    }
+
+    private WinOracle() {
+    }
+
+    /**
+     * @param index Number of the line, from 0 to LINE_COUNT - 1
+     * @return 9-bit mask of the three cells of the line
+     */
+    public static int line(int index) {
+        return LINES[index];
+    }
+
+    /**
+     * @param cells 9-bit mask of the cells owned by one player
+     * @return Returns true if the cells contain three in a row, otherwise returns false.
+     */
+    public static boolean isWin(int cells) {
+        return WIN[cells];
+    }
+
+    /**
+     * @param player 9-bit mask of the cells owned by a player
+     * @param opponent 9-bit mask of the cells owned by the opponent
+     * @return 9-bit mask of the empty cells that give the player three in a row.
+     */
+    public static int winningCells(int player, int opponent) {
+        return THREATS[player] & ~(player | opponent);
+    }
+
+    /**
+     * @param occupied 9-bit mask of the cells owned by either player
+     * @return Returns true when every cell is occupied, otherwise returns false.
+     */
+    public static boolean isFull(int occupied) {
+        return occupied == FULL;
+    }
+
+    /**
+     * @param player 9-bit mask of the cells owned by the player who just moved
+     * @param opponent 9-bit mask of the cells owned by the opponent
+     * @return Returns true when the board has no winner and every cell is occupied.
+     */
+    public static boolean isTie(int player, int opponent) {
+        return (player | opponent) == FULL && !WIN[player] && !WIN[opponent];
+    }
+}
@@ -0,0 +1,81 @@
+package dk.easv.bll.field;
+
+/**
+ * Zobrist keys for identifying positions with a single 64-bit number.
+ *
+ * A position key is the XOR of one key per occupied cell and player, one key per
+ * microboard available for play and, when player 1 is to move, the side key.
+ * Because XOR is its own inverse, keys are updated incrementally as the board
+ * changes. The keys come from a fixed seed, so they are the same in every run
+ * and can be stored on disk.
+ */
+public final class Zobrist {
+
+    /**
+     * Key for player 1 being the side to move.
+     */
+    public static final long SIDE;
+
+    private static final long[] CELL = new long[2 * 81];
+    private static final long[] ACTIVE = new long[9];
+
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < CELL.length; i++) {
+            CELL[i] = mix(seed += 0x9E3779B97F4A7C15L);
+        }
+        for (int i = 0; i < ACTIVE.length; i++) {
+            ACTIVE[i] = mix(seed += 0x9E3779B97F4A7C15L);
+        }
+        SIDE = mix(seed + 0x9E3779B97F4A7C15L);
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * @param player 0 or 1
+     * @param x Column
+     * @param y Row
+     * @return Key for the player occupying cell (x,y)
+     */
+    public static long cell(int player, int x, int y) {
+        return CELL[player * 81 + x * 9 + y];
+    }
+
+    /**
+     * @param mask 9-bit mask of microboards available for play, see IField.getActiveMicroboards
+     * @return Combined key of the available microboards
+     */
+    public static long active(int mask) {
+        long key = 0;
+        while (mask != 0) {
+            key ^= ACTIVE[Integer.numberOfTrailingZeros(mask)];
+            mask &= mask - 1;
+        }
+        return key;
+    }
+
+    /**
+     * Computes the key of a field from scratch, without the side to move.
+     * @param field The field to compute the key for
+     * @return The key of the cells and available microboards of the field
+     */
+    public static long compute(IField field) {
+        long key = active(field.getActiveMicroboards());
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                int owner = field.getCellOwner(x, y);
+                if (owner != IField.NO_OWNER)
+                    key ^= cell(owner, x, y);
+            }
+        return key;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
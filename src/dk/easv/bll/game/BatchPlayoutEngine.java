@@ -0,0 +1,227 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.field.WinOracle;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs many uniformly random playouts from one position side by side.
+ *
+ * The games of a batch are kept as structure of arrays: for every microboard
+ * an int array with the 9-bit cell mask of each game, plus arrays with the won,
+ * tied and available microboard masks and the player to move. All games make
+ * one move per step (lockstep), and games that have ended are dropped from the
+ * list of running games, so every step is one tight loop over plain ints
+ * without GameManager, strings or allocation.
+ *
+ * The rules are the same as in GameManager: the move's local cell decides the
+ * next microboard, and any undecided microboard is available when that one is
+ * decided.
+ *
+ * An engine is not thread safe, use one per thread.
+ */
+public class BatchPlayoutEngine {
+
+    /**
+     * Default number of games played side by side.
+     */
+    public static final int DEFAULT_BATCH = 256;
+    private static final int ALL = WinOracle.FULL;
+
+    private final int batch;
+    // cells[player][board * batch + game]
+    private final int[][] cells;
+    private final int[][] won;
+    private final int[] tied;
+    private final int[] active;
+    private final int[] toMove;
+    private final int[] winner;
+    private final int[] running;
+
+    private final int[][] rootCells = new int[2][9];
+    private final int[] rootWon = new int[2];
+    private int rootTied;
+    private int rootActive;
+    private int rootPlayer;
+    private int rootWinner;
+    private long seed;
+
+    public BatchPlayoutEngine() {
+        this(DEFAULT_BATCH, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * @param batch Number of games played side by side
+     * @param seed Seed of the random generator, for reproducible playouts
+     */
+    public BatchPlayoutEngine(int batch, long seed) {
+        if (batch < 1)
+            throw new IllegalArgumentException("Batch must be at least 1: " + batch);
+        this.batch = batch;
+        this.seed = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+        cells = new int[2][9 * batch];
+        won = new int[2][batch];
+        tied = new int[batch];
+        active = new int[batch];
+        toMove = new int[batch];
+        winner = new int[batch];
+        running = new int[batch];
+    }
+
+    /**
+     * Sets the position all following playouts start from.
+     * @param state The start position, it is copied and not used afterwards
+     */
+    public void load(IGameState state) {
+        load(state.getField(), state.getMoveNumber());
+    }
+
+    void load(IField field, int moveNumber) {
+        for (int board = 0; board < 9; board++) {
+            rootCells[0][board] = field.getCellMask(board / 3, board % 3, 0);
+            rootCells[1][board] = field.getCellMask(board / 3, board % 3, 1);
+        }
+        rootWon[0] = field.getMicroboardMask(0);
+        rootWon[1] = field.getMicroboardMask(1);
+        rootTied = field.getMicroboardMask(IField.TIED);
+        rootActive = field.getActiveMicroboards() & ~(rootWon[0] | rootWon[1] | rootTied);
+        rootPlayer = moveNumber % 2;
+        if (WinOracle.isWin(rootWon[0]))
+            rootWinner = 0;
+        else if (WinOracle.isWin(rootWon[1]))
+            rootWinner = 1;
+        else if ((rootWon[0] | rootWon[1] | rootTied) == ALL || rootActive == 0)
+            rootWinner = PlayoutEngine.TIE;
+        else
+            rootWinner = IField.NO_OWNER;
+    }
+
+    /**
+     * Runs a number of playouts from the loaded position.
+     * @param count Number of playouts
+     * @return The results, seen from the player to move in the loaded position
+     */
+    public PlayoutEngine.Result playouts(int count) {
+        int wins = 0;
+        int losses = 0;
+        for (int done = 0; done < count; done += batch) {
+            int games = Math.min(batch, count - done);
+            runBatch(games);
+            for (int game = 0; game < games; game++) {
+                if (winner[game] == rootPlayer)
+                    wins++;
+                else if (winner[game] != PlayoutEngine.TIE)
+                    losses++;
+            }
+        }
+        return new PlayoutEngine.Result(wins, losses, count - wins - losses);
+    }
+
+    /**
+     * Loads the position and runs a number of playouts from it.
+     * @param state The start position
+     * @param count Number of playouts
+     * @return The results, seen from the player to move in the given position
+     */
+    public PlayoutEngine.Result playouts(IGameState state, int count) {
+        load(state);
+        return playouts(count);
+    }
+
+    private void runBatch(int games) {
+        if (rootWinner != IField.NO_OWNER) {
+            for (int game = 0; game < games; game++) {
+                winner[game] = rootWinner;
+            }
+            return;
+        }
+        for (int board = 0; board < 9; board++) {
+            int offset = board * batch;
+            for (int game = 0; game < games; game++) {
+                cells[0][offset + game] = rootCells[0][board];
+                cells[1][offset + game] = rootCells[1][board];
+            }
+        }
+        for (int game = 0; game < games; game++) {
+            won[0][game] = rootWon[0];
+            won[1][game] = rootWon[1];
+            tied[game] = rootTied;
+            active[game] = rootActive;
+            toMove[game] = rootPlayer;
+            running[game] = game;
+        }
+
+        int count = games;
+        while (count > 0) {
+            int stillRunning = 0;
+            for (int i = 0; i < count; i++) {
+                int game = running[i];
+                if (step(game))
+                    running[stillRunning++] = game;
+            }
+            count = stillRunning;
+        }
+    }
+
+    // Plays a random move in the game, returns false when the game has ended
+    private boolean step(int game) {
+        int[] own = cells[toMove[game]];
+        int[] other = cells[1 - toMove[game]];
+        int available = active[game];
+
+        int total = 0;
+        for (int mask = available; mask != 0; mask &= mask - 1) {
+            int index = Integer.numberOfTrailingZeros(mask) * batch + game;
+            total += 9 - Integer.bitCount(own[index] | other[index]);
+        }
+        int pick = nextInt(total);
+
+        int board = 0;
+        int empty = 0;
+        for (int mask = available; mask != 0; mask &= mask - 1) {
+            board = Integer.numberOfTrailingZeros(mask);
+            int index = board * batch + game;
+            empty = ~(own[index] | other[index]) & ALL;
+            int free = Integer.bitCount(empty);
+            if (pick < free)
+                break;
+            pick -= free;
+        }
+        for (; pick > 0; pick--) {
+            empty &= empty - 1;
+        }
+        int cell = Integer.numberOfTrailingZeros(empty);
+
+        int player = toMove[game];
+        int index = board * batch + game;
+        own[index] |= 1 << cell;
+        if (WinOracle.isWin(own[index])) {
+            won[player][game] |= 1 << board;
+            if (WinOracle.isWin(won[player][game])) {
+                winner[game] = player;
+                return false;
+            }
+        }
+        else if (WinOracle.isFull(own[index] | other[index]))
+            tied[game] |= 1 << board;
+
+        int decided = won[0][game] | won[1][game] | tied[game];
+        if (decided == ALL) {
+            winner[game] = PlayoutEngine.TIE;
+            return false;
+        }
+        active[game] = (decided & 1 << cell) == 0 ? 1 << cell : ~decided & ALL;
+        toMove[game] = 1 - player;
+        return true;
+    }
+
+    private int nextInt(int bound) {
+        long x = seed;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        seed = x;
+        return (int) (((x >>> 32) * bound) >>> 32);
+    }
+}
@@ -0,0 +1,223 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.move.IMove;
+
+import java.util.List;
+
+/**
+ * Game state handed to bots instead of a defensive copy of the live game.
+ *
+ * All reads go straight to the wrapped state, so handing it to a bot costs
+ * nothing. The first write forks a private copy of the state and from then on
+ * every call goes to that copy, so the live game is never changed by a bot.
+ * getBoard() and getMacroboard() are reads too and return the views of the
+ * wrapped field, which are read-only as described in IField: change the
+ * position with the setters, which fork, not by writing into those arrays.
+ *
+ * Until it forks the view follows the wrapped state, so it is only a stable
+ * position during the IBot.doMove call it was handed to. Bots that keep a
+ * position for later should take a copy with new GameState(state).
+ */
+public class CopyOnWriteGameState implements IGameState {
+
+    private IGameState state;
+    private boolean forked = false;
+    private final IField field = new CopyOnWriteField();
+
+    /**
+     * @param state The state to wrap, usually the live state of a GameManager
+     */
+    public CopyOnWriteGameState(IGameState state) {
+        this.state = state;
+    }
+
+    /**
+     * @return Returns true once a write has forked a private copy of the state.
+     */
+    public boolean isForked() {
+        return forked;
+    }
+
+    private IGameState fork() {
+        if (!forked) {
+            state = new GameState(state);
+            forked = true;
+        }
+        return state;
+    }
+
+    @Override
+    public IField getField() {
+        return field;
+    }
+
+    @Override
+    public int getMoveNumber() {
+        return state.getMoveNumber();
+    }
+
+    @Override
+    public void setMoveNumber(int moveNumber) {
+        fork().setMoveNumber(moveNumber);
+    }
+
+    @Override
+    public int getRoundNumber() {
+        return state.getRoundNumber();
+    }
+
+    @Override
+    public void setRoundNumber(int roundNumber) {
+        fork().setRoundNumber(roundNumber);
+    }
+
+    @Override
+    public int getTimePerMove() {
+        return state.getTimePerMove();
+    }
+
+    @Override
+    public void setTimePerMove(int milliSeconds) {
+        fork().setTimePerMove(milliSeconds);
+    }
+
+    @Override
+    public long getZobristKey() {
+        return state.getZobristKey();
+    }
+
+    /**
+     * Field of the view, always working on the field of the current state.
+     */
+    private class CopyOnWriteField implements IField {
+
+        private IField read() {
+            return state.getField();
+        }
+
+        private IField write() {
+            return fork().getField();
+        }
+
+        @Override
+        public void clearBoard() {
+            write().clearBoard();
+        }
+
+        @Override
+        public List<IMove> getAvailableMoves() {
+            return read().getAvailableMoves();
+        }
+
+        @Override
+        public int getAvailableMoves(int[] moves) {
+            return read().getAvailableMoves(moves);
+        }
+
+        @Override
+        public int countAvailableMoves() {
+            return read().countAvailableMoves();
+        }
+
+        @Override
+        public boolean hasAvailableMoves() {
+            return read().hasAvailableMoves();
+        }
+
+        @Override
+        public String getPlayerId(int column, int row) {
+            return read().getPlayerId(column, row);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return read().isEmpty();
+        }
+
+        @Override
+        public boolean isFull() {
+            return read().isFull();
+        }
+
+        @Override
+        public Boolean isInActiveMicroboard(int x, int y) {
+            return read().isInActiveMicroboard(x, y);
+        }
+
+        @Override
+        public String[][] getBoard() {
+            return read().getBoard();
+        }
+
+        @Override
+        public String[][] getMacroboard() {
+            return read().getMacroboard();
+        }
+
+        @Override
+        public void setBoard(String[][] board) {
+            write().setBoard(board);
+        }
+
+        @Override
+        public void setMacroboard(String[][] macroboard) {
+            write().setMacroboard(macroboard);
+        }
+
+        @Override
+        public int getCellOwner(int x, int y) {
+            return read().getCellOwner(x, y);
+        }
+
+        @Override
+        public void setCellOwner(int x, int y, int player) {
+            write().setCellOwner(x, y, player);
+        }
+
+        @Override
+        public int getMicroboardState(int macroX, int macroY) {
+            return read().getMicroboardState(macroX, macroY);
+        }
+
+        @Override
+        public void setMicroboardState(int macroX, int macroY, int state) {
+            write().setMicroboardState(macroX, macroY, state);
+        }
+
+        @Override
+        public int getCellMask(int macroX, int macroY, int player) {
+            return read().getCellMask(macroX, macroY, player);
+        }
+
+        @Override
+        public int getMicroboardMask(int state) {
+            return read().getMicroboardMask(state);
+        }
+
+        @Override
+        public int getWinningCells(int macroX, int macroY, int player) {
+            return read().getWinningCells(macroX, macroY, player);
+        }
+
+        @Override
+        public int getBlockingCells(int macroX, int macroY, int player) {
+            return read().getBlockingCells(macroX, macroY, player);
+        }
+
+        @Override
+        public int getActiveMicroboards() {
+            return read().getActiveMicroboards();
+        }
+
+        @Override
+        public void setActiveMicroboards(int mask) {
+            write().setActiveMicroboards(mask);
+        }
+
+        @Override
+        public long getZobristKey() {
+            return read().getZobristKey();
+        }
+    }
+}
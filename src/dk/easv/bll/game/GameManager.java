@@ -1,10 +1,16 @@
 package dk.easv.bll.game;
 
+import dk.easv.bll.bot.IAnytimeBot;
 import dk.easv.bll.bot.IBot;
+import dk.easv.bll.bot.IPonderingBot;
 import dk.easv.bll.field.IField;
+import dk.easv.bll.field.WinOracle;
 import dk.easv.bll.move.IMove;
 import dk.easv.bll.move.Move;
 
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * This is a proposed GameManager for Ultimate Tic-Tac-Toe,
  * the implementation of which is up to whoever uses this interface.
@@ -37,10 +43,16 @@ public class GameManager {
     private GameMode mode = GameMode.HumanVsHuman;
     private IBot bot = null;
     private IBot bot2 = null;
+    private static final long ANYTIME_POLL_NS = 1_000_000L;
     private volatile GameOverState gameOver = GameOverState.Active;
+    // Undo records of the played moves, see applyMove
+    private int[] history = new int[81];
+    private int historySize = 0;
 
     public void setGameOver(GameOverState state) {
         gameOver = state;
+        if(state != GameOverState.Active && bot instanceof IPonderingBot && mode == GameMode.HumanVsBot)
+            ((IPonderingBot) bot).stopPondering();
     }
     public GameOverState getGameOver() {
         return gameOver;
@@ -105,14 +117,107 @@ public class GameManager {
      */
     public Boolean updateGame(IMove move)
     {
-        if(!verifyMoveLegality(move)) 
+        boolean valid = applyMove(move);
+        if(valid)
+            notifyPonderingBot();
+        return valid;
+    }
+
+    /**
+     * In Human vs Bot games, lets an IPonderingBot think while the human is
+     * to move, and stops it as soon as the human has moved.
+     */
+    private void notifyPonderingBot()
+    {
+        if(mode != GameMode.HumanVsBot || !(bot instanceof IPonderingBot))
+            return;
+        IPonderingBot ponderingBot = (IPonderingBot) bot;
+        ponderingBot.stopPondering();
+        int botPlayer = playerGoesFirst ? 1 : 0;
+        if(gameOver == GameOverState.Active && currentPlayer != botPlayer)
+            ponderingBot.startPondering(new GameState(currentState));
+    }
+
+    /**
+     * Plays a move for the current player and remembers what it changed,
+     * so it can be taken back again with undoMove.
+     * This lets a search walk the game tree in place instead of copying the state.
+     * @param move The move to play
+     * @return Returns true if the move was legal and played, false otherwise (also for no move at all).
+     */
+    public Boolean applyMove(IMove move)
+    {
+        return move != null && applyMove(move.getX(), move.getY());
+    }
+
+    /**
+     * Plays a move for the current player, see applyMove(IMove).
+     * @param x Column of the move
+     * @param y Row of the move
+     * @return Returns true if the move was legal and played, false otherwise.
+     */
+    public boolean applyMove(int x, int y)
+    {
+        if(!verifyMoveLegality(x, y))
             return false;
-        
-        updateBoard(move);
+
+        IField field = currentState.getField();
+        if(historySize == history.length)
+            history = Arrays.copyOf(history, history.length * 2);
+        history[historySize++] = (x * 9 + y)
+                | field.getActiveMicroboards() << 7
+                | (field.getMicroboardState(x / 3, y / 3) + 1) << 16
+                | gameOver.ordinal() << 18
+                | currentPlayer << 20;
+
+        updateBoard(x, y);
         currentPlayer = (currentPlayer + 1) % 2;
-        
+
         return true;
     }
+
+    /**
+     * Takes back the last move played, restoring the board cell, the macroboard,
+     * the available microboards, the move and round numbers, the game over state
+     * and the current player.
+     * @throws IllegalStateException if there is no move to take back
+     */
+    public void undoMove()
+    {
+        if(historySize == 0)
+            throw new IllegalStateException("No move to undo");
+
+        int record = history[--historySize];
+        int cell = record & 0x7F;
+        int x = cell / 9;
+        int y = cell % 9;
+
+        IField field = currentState.getField();
+        field.setCellOwner(x, y, IField.NO_OWNER);
+        field.setMicroboardState(x / 3, y / 3, (record >>> 16 & 3) - 1);
+        field.setActiveMicroboards(record >>> 7 & 0x1FF);
+
+        if(currentState.getMoveNumber() % 2 == 0) { currentState.setRoundNumber(currentState.getRoundNumber() - 1); }
+        currentState.setMoveNumber(currentState.getMoveNumber() - 1);
+        gameOver = GameOverState.values()[record >>> 18 & 3];
+        currentPlayer = record >>> 20 & 1;
+    }
+
+    /**
+     * @return Number of moves that can be taken back with undoMove
+     */
+    public int getUndoableMoves()
+    {
+        return historySize;
+    }
+
+    /**
+     * Forgets all undo records, e.g. after the state was overwritten from outside.
+     */
+    void clearHistory()
+    {
+        historySize = 0;
+    }
     
     /**
      * Non-User driven input, e.g. an update for playing a bot move.
@@ -126,12 +231,12 @@ public class GameManager {
         //Check if player is bot, if so, get bot input and update the state based on that.
         if(mode == GameMode.HumanVsBot && currentPlayer == 1 && playerGoesFirst)
         {
-             IMove botMove = bot.doMove(new GameState(currentState));
+             IMove botMove = getBotMove(bot);
              return updateGame(botMove);
         }
         else if(mode == GameMode.HumanVsBot && !playerGoesFirst && currentPlayer == 0)
         {
-            IMove botMove = bot.doMove(new GameState(currentState));
+            IMove botMove = getBotMove(bot);
             return updateGame(botMove);
         }
         
@@ -145,7 +250,7 @@ public class GameManager {
             assert(bot != null);
             assert(bot2 != null);
 
-            IMove botMove = currentPlayer == 0 ? bot.doMove(new GameState(currentState)) : bot2.doMove(new GameState(currentState));
+            IMove botMove = currentPlayer == 0 ? getBotMove(bot) : getBotMove(bot2);
 
             return updateGame(botMove);
         }
@@ -154,72 +259,84 @@ public class GameManager {
 
 
 
-    private Boolean verifyMoveLegality(IMove move)
+    /**
+     * Asks a bot for its move. An IAnytimeBot searches for the time per move,
+     * or until it is done, and then plays its best move so far. If it has no
+     * move yet the first available move is played, asking it with doMove
+     * would take a second time per move.
+     */
+    private IMove getBotMove(IBot player)
     {
-        IField field = currentState.getField();
-        boolean isValid=field.isInActiveMicroboard(move.getX(), move.getY());
+        if(!(player instanceof IAnytimeBot))
+            return player.doMove(new CopyOnWriteGameState(currentState));
+
+        IAnytimeBot anytimeBot = (IAnytimeBot) player;
+        long deadline = System.nanoTime() + currentState.getTimePerMove() * 1_000_000L;
+        anytimeBot.startSearch(new GameState(currentState));
+        while(anytimeBot.isSearching() && System.nanoTime() < deadline)
+            LockSupport.parkNanos(ANYTIME_POLL_NS);
+        anytimeBot.stopSearch();
+        IMove move = anytimeBot.getBestMove();
+        if(move != null)
+            return move;
+        int[] moves = new int[81];
+        return currentState.getField().getAvailableMoves(moves) == 0 ? null : Move.of(moves[0]);
+    }
 
-        if(isValid && (move.getX() < 0 || 9 <= move.getX())) isValid = false;
-        if(isValid && (move.getY() < 0 || 9 <= move.getY())) isValid = false;
+    private boolean verifyMoveLegality(int x, int y)
+    {
+        IField field = currentState.getField();
 
-        if(isValid && !field.getBoard()[move.getX()][move.getY()].equals(IField.EMPTY_FIELD))
-            isValid=false;
+        if(x < 0 || 9 <= x) return false;
+        if(y < 0 || 9 <= y) return false;
 
-        return isValid;
+        return field.isInActiveMicroboard(x, y)
+                && field.getCellOwner(x, y) == IField.NO_OWNER;
     }
     
-    private void updateBoard(IMove move)
+    private void updateBoard(int x, int y)
     {
-        String[][] board = currentState.getField().getBoard();
-        board[move.getX()][move.getY()]=currentPlayer+"";
+        currentState.getField().setCellOwner(x, y, currentPlayer);
         currentState.setMoveNumber(currentState.getMoveNumber() + 1);
         if(currentState.getMoveNumber() % 2 == 0) { currentState.setRoundNumber(currentState.getRoundNumber() + 1); }
-        checkAndUpdateIfWin(move);
-        updateMacroboard(move);
+        checkAndUpdateIfWin(x, y);
+        updateMacroboard(x, y);
 
     }
 
-    private void checkAndUpdateIfWin(IMove move) {
-        String[][] macroBoard = currentState.getField().getMacroboard();
-        int macroX = move.getX()/3;
-        int macroY = move.getY()/3;
+    private void checkAndUpdateIfWin(int x, int y) {
+        IField field = currentState.getField();
+        int macroX = x/3;
+        int macroY = y/3;
 
-        if(macroBoard[macroX][macroY].equals(IField.EMPTY_FIELD) ||
-                macroBoard[macroX][macroY].equals(IField.AVAILABLE_FIELD) ) {
+        if(field.getMicroboardState(macroX, macroY) == IField.NO_OWNER) {
 
-            String[][] board = getCurrentState().getField().getBoard();
+            int cells = field.getCellMask(macroX, macroY, currentPlayer);
+            if(WinOracle.isWin(cells))
+                field.setMicroboardState(macroX, macroY, currentPlayer);
+            else if(WinOracle.isFull(cells | field.getCellMask(macroX, macroY, 1 - currentPlayer)))
+                field.setMicroboardState(macroX, macroY, IField.TIED);
 
-            if(isWin(board,move, ""+currentPlayer))
-                macroBoard[macroX][macroY] = currentPlayer + "";
-            else if(isTie(board,move))
-                macroBoard[macroX][macroY] = "TIE";
-            
             //Check macro win
-            if(isWin(macroBoard,new Move(macroX,macroY), ""+currentPlayer))
+            if(WinOracle.isWin(field.getMicroboardMask(currentPlayer)))
                 gameOver = GameOverState.Win;
-            else if(isTie(macroBoard,new Move(macroX,macroY)))
+            else if(field.getMicroboardMask(IField.NO_OWNER) == 0)
                 gameOver = GameOverState.Tie;
         }
 
     }
 
-    private boolean isTie(String[][] board, IMove move){
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - (localX);
-        int startY = move.getY() - (localY);
-
-        for (int i = startX; i < startX+3; i++) {
-            for (int k = startY; k < startY+3; k++) {
-                if(board[i][k].equals(IField.AVAILABLE_FIELD) ||
-                        board[i][k].equals(IField.EMPTY_FIELD) )
-                    return false;
-            }
-        }
-        return true;
+    /**
+     * Reads the end of the game from the macroboard, for positions that were
+     * not played through this GameManager, which starts out Active.
+     * @param field The position
+     * @return Returns true when a player has three microboards in a row or no microboard is undecided, otherwise returns false.
+     */
+    public static boolean isGameOver(IField field) {
+        return WinOracle.isWin(field.getMicroboardMask(0)) || WinOracle.isWin(field.getMicroboardMask(1))
+                || field.getMicroboardMask(IField.NO_OWNER) == 0;
     }
 
-
     public static boolean isWin(String[][] board, IMove move, String currentPlayer){
         int localX = move.getX() % 3;
         int localY = move.getY() % 3;
@@ -263,27 +380,17 @@ public class GameManager {
         return false;
     }
     
-    private void updateMacroboard(IMove move)
+    private void updateMacroboard(int x, int y)
     {
-        String[][] macroBoard = currentState.getField().getMacroboard();
-        for (int i = 0; i < macroBoard.length; i++)
-            for (int k = 0; k < macroBoard[i].length; k++) {
-                if(macroBoard[i][k].equals(IField.AVAILABLE_FIELD))
-                    macroBoard[i][k] = IField.EMPTY_FIELD;
-            }
-
-        int xTrans = move.getX()%3;
-        int yTrans = move.getY()%3;
+        IField field = currentState.getField();
+        int xTrans = x%3;
+        int yTrans = y%3;
 
-        if(macroBoard[xTrans][yTrans].equals(IField.EMPTY_FIELD))
-            macroBoard[xTrans][yTrans] = IField.AVAILABLE_FIELD;
+        if(field.getMicroboardState(xTrans, yTrans) == IField.NO_OWNER)
+            field.setActiveMicroboards(1 << (xTrans * 3 + yTrans));
         else {
             // Field is already won, set all fields not won to avail.
-            for (int i = 0; i < macroBoard.length; i++)
-                for (int k = 0; k < macroBoard[i].length; k++) {
-                    if(macroBoard[i][k].equals(IField.EMPTY_FIELD))
-                        macroBoard[i][k] = IField.AVAILABLE_FIELD;
-                }
+            field.setActiveMicroboards(0x1FF);
         }
     }
 }
@@ -1,7 +1,8 @@
 package dk.easv.bll.game;
 
-import dk.easv.bll.field.Field;
+import dk.easv.bll.field.BitboardField;
 import dk.easv.bll.field.IField;
+import dk.easv.bll.field.Zobrist;
 
 public class GameState implements IGameState{
     IField field;
@@ -10,18 +11,25 @@ public class GameState implements IGameState{
     int timePerMove = 1000; //1000ms default value, can be changes depending on game specifics.
 
     public GameState(){
-        field = new Field();
+        this(new BitboardField());
+    }
+
+    /**
+     * Creates an empty game state on the given field.
+     * @param field The field to play on
+     */
+    public GameState(IField field){
+        this.field = field;
         moveNumber=0;
         roundNumber=0;
     }
 
     public GameState(IGameState state) {
-        field = new Field();
-        field.setMacroboard(state.getField().getMacroboard());
-        field.setBoard(state.getField().getBoard());
+        field = new BitboardField(state.getField());
 
         moveNumber = state.getMoveNumber();
         roundNumber = state.getRoundNumber();
+        timePerMove = state.getTimePerMove();
     }
 
     @Override
@@ -60,4 +68,10 @@ public class GameState implements IGameState{
     {
         this.timePerMove = milliSeconds;
     }
+
+    @Override
+    public long getZobristKey() {
+        long key = field.getZobristKey();
+        return moveNumber % 2 == 0 ? key : key ^ Zobrist.SIDE;
+    }
 }
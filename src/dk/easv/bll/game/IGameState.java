@@ -18,4 +18,12 @@ public interface IGameState {
 
     int getTimePerMove();
     void setTimePerMove(int milliSeconds);
+
+    /**
+     * Returns a 64-bit key identifying the position: the occupied cells,
+     * the microboards available for play and the side to move.
+     * Equal positions always have equal keys, see Zobrist.
+     * @return Zobrist key of the position
+     */
+    long getZobristKey();
 }
@@ -0,0 +1,220 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.BitboardField;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.field.WinOracle;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs random (or policy driven) playouts from a position to the end of the game.
+ *
+ * The engine plays on its own scratch state through a GameManager, so the rules
+ * are exactly the ones of the real game. The start position is copied once by
+ * load, and every playout starts from it again by copying a handful of ints.
+ * No objects are allocated per playout.
+ *
+ * An engine is not thread safe, use one per thread. Each engine has its own
+ * xorshift random generator.
+ */
+public class PlayoutEngine {
+
+    /**
+     * Playout result of a game that ended in a tie.
+     */
+    public static final int TIE = IField.TIED;
+
+    private final BitboardField root = new BitboardField();
+    private final GameState scratch = new GameState();
+    private final GameManager manager = new GameManager(scratch);
+    private final int[] moves = new int[81];
+    private int rootMoveNumber;
+    private int rootRoundNumber;
+    private int rootWinner;
+    private PlayoutPolicy policy = null;
+    private BatchPlayoutEngine batch = null;
+    private long seed;
+
+    public PlayoutEngine() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * @param seed Seed of the random generator, for reproducible playouts
+     */
+    public PlayoutEngine(long seed) {
+        this.seed = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    /**
+     * @param policy Policy choosing the playout moves, null for uniformly random moves
+     */
+    public void setPolicy(PlayoutPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Sets the position all following playouts start from.
+     * @param state The start position, it is copied and not used afterwards
+     */
+    public void load(IGameState state) {
+        root.copyFrom(state.getField());
+        rootMoveNumber = state.getMoveNumber();
+        rootRoundNumber = state.getRoundNumber();
+        rootWinner = winner(root);
+    }
+
+    /**
+     * Plays one game from the loaded position to the end.
+     * @return 0 or 1 for the winning player, TIE for a tie
+     */
+    public int playout() {
+        reset();
+        return finish();
+    }
+
+    /**
+     * Plays the given move in the loaded position, then plays the game to the end.
+     * @param x Column of the first move
+     * @param y Row of the first move
+     * @return 0 or 1 for the winning player, TIE for a tie
+     * @throws IllegalArgumentException if the move is not legal in the loaded position
+     */
+    public int playout(int x, int y) {
+        reset();
+        if (manager.getGameOver() == GameManager.GameOverState.Active && !manager.applyMove(x, y))
+            throw new IllegalArgumentException("Illegal first move (" + x + "," + y + ")");
+        return finish();
+    }
+
+    /**
+     * Runs a number of playouts from the loaded position. Without a policy
+     * they are played side by side by a BatchPlayoutEngine.
+     * @param count Number of playouts
+     * @return The results, seen from the player to move in the loaded position
+     */
+    public Result playouts(int count) {
+        if (policy == null) {
+            if (batch == null)
+                batch = new BatchPlayoutEngine(BatchPlayoutEngine.DEFAULT_BATCH, seed ^ nextInt(Integer.MAX_VALUE));
+            batch.load(root, rootMoveNumber);
+            return batch.playouts(count);
+        }
+        int player = rootMoveNumber % 2;
+        int wins = 0;
+        int losses = 0;
+        for (int i = 0; i < count; i++) {
+            int winner = playout();
+            if (winner == player)
+                wins++;
+            else if (winner != TIE)
+                losses++;
+        }
+        return new Result(wins, losses, count - wins - losses);
+    }
+
+    /**
+     * Loads the position and runs a number of playouts from it.
+     * @param state The start position
+     * @param count Number of playouts
+     * @return The results, seen from the player to move in the given position
+     */
+    public Result playouts(IGameState state, int count) {
+        load(state);
+        return playouts(count);
+    }
+
+    /**
+     * @param bound Upper bound (exclusive), must be positive
+     * @return A random number between 0 and bound from the engine's generator
+     */
+    public int nextInt(int bound) {
+        long x = seed;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        seed = x;
+        return (int) (((x >>> 32) * bound) >>> 32);
+    }
+
+    private void reset() {
+        ((BitboardField) scratch.getField()).copyFrom(root);
+        scratch.setMoveNumber(rootMoveNumber);
+        scratch.setRoundNumber(rootRoundNumber);
+        manager.clearHistory();
+        manager.setCurrentPlayer(rootMoveNumber % 2);
+        manager.setGameOver(rootWinner == IField.NO_OWNER
+                ? GameManager.GameOverState.Active
+                : rootWinner == TIE ? GameManager.GameOverState.Tie : GameManager.GameOverState.Win);
+    }
+
+    private int finish() {
+        IField field = scratch.getField();
+        while (manager.getGameOver() == GameManager.GameOverState.Active) {
+            int count = field.getAvailableMoves(moves);
+            if (count == 0)
+                return TIE;
+            int cell = moves[policy == null ? nextInt(count) : policy.selectMove(scratch, moves, count, this)];
+            manager.applyMove(cell / 9, cell % 9);
+        }
+        if (manager.getGameOver() == GameManager.GameOverState.Tie)
+            return TIE;
+        return rootWinner == IField.NO_OWNER || manager.getUndoableMoves() > 0
+                ? 1 - manager.getCurrentPlayer()
+                : rootWinner;
+    }
+
+    private static int winner(IField field) {
+        if (WinOracle.isWin(field.getMicroboardMask(0)))
+            return 0;
+        if (WinOracle.isWin(field.getMicroboardMask(1)))
+            return 1;
+        if (field.getMicroboardMask(IField.NO_OWNER) == 0)
+            return TIE;
+        return IField.NO_OWNER;
+    }
+
+    /**
+     * Win, loss and tie counts of a number of playouts.
+     */
+    public static class Result {
+        private final int wins;
+        private final int losses;
+        private final int ties;
+
+        public Result(int wins, int losses, int ties) {
+            this.wins = wins;
+            this.losses = losses;
+            this.ties = ties;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+
+        public int getTies() {
+            return ties;
+        }
+
+        public int getPlayouts() {
+            return wins + losses + ties;
+        }
+
+        /**
+         * @return Average score per playout, a win counts 1 and a tie 0.5
+         */
+        public double getScore() {
+            int playouts = getPlayouts();
+            return playouts == 0 ? 0 : (wins + 0.5 * ties) / playouts;
+        }
+
+        @Override
+        public String toString() {
+            return "w/l/t " + wins + "/" + losses + "/" + ties;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package dk.easv.bll.game;
+
+/**
+ * Chooses the moves of a playout run by the PlayoutEngine.
+ */
+public interface PlayoutPolicy {
+
+    /**
+     * Picks the next move of a playout.
+     * @param state The position to move in, only valid during this call
+     * @param moves Available moves as cell indices x*9 + y
+     * @param count Number of available moves in the buffer, at least 1
+     * @param engine The engine running the playout, use its nextInt for randomness
+     * @return Index in the moves buffer of the chosen move
+     */
+    int selectMove(IGameState state, int[] moves, int count, PlayoutEngine engine);
+}
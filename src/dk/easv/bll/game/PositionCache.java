@@ -0,0 +1,99 @@
+package dk.easv.bll.game;
+
+/**
+ * Bounded cache of values per position, keyed by IGameState.getZobristKey().
+ *
+ * The cache is a fixed size table where every key maps to exactly one slot,
+ * and a new entry simply replaces whatever was in its slot. Memory use never
+ * grows, and lookups and stores are O(1). The cache is not thread safe,
+ * use one per thread.
+ * @param <V> Type of the cached values
+ */
+public class PositionCache<V> {
+
+    private final long[] keys;
+    private final Object[] values;
+    private final int mask;
+    private int size = 0;
+
+    /**
+     * @param capacity Maximum number of cached positions, rounded up to a power of two
+     */
+    public PositionCache(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity)
+            slots <<= 1;
+        keys = new long[slots];
+        values = new Object[slots];
+        mask = slots - 1;
+    }
+
+    /**
+     * @param key Zobrist key of the position
+     * @return The cached value, or null if the position is not cached
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = slot(key);
+        return keys[slot] == key ? (V) values[slot] : null;
+    }
+
+    /**
+     * @param state The position
+     * @return The cached value, or null if the position is not cached
+     */
+    public V get(IGameState state) {
+        return get(state.getZobristKey());
+    }
+
+    /**
+     * Caches a value, replacing any other position sharing the slot.
+     * @param key Zobrist key of the position
+     * @param value The value to cache, null removes the position
+     */
+    public void put(long key, V value) {
+        int slot = slot(key);
+        if (values[slot] == null && value != null)
+            size++;
+        else if (values[slot] != null && value == null)
+            size--;
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    /**
+     * @param state The position
+     * @param value The value to cache, null removes the position
+     */
+    public void put(IGameState state, V value) {
+        put(state.getZobristKey(), value);
+    }
+
+    /**
+     * @return Number of cached positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Maximum number of cached positions
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 0;
+            values[i] = null;
+        }
+        size = 0;
+    }
+
+    private int slot(long key) {
+        return (int) (key ^ key >>> 32) & mask;
+    }
+}
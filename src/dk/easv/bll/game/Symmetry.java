@@ -0,0 +1,237 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.field.Zobrist;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+/**
+ * The 8 rotations and mirrors of the board, and canonical positions.
+ *
+ * A transform is a number from 0 to 7: bit 0 transposes the board (swaps x
+ * and y), then bit 1 mirrors x and bit 2 mirrors y. Transform 0 is the
+ * identity. A transform moves the cells, the microboards and the available
+ * microboards together, so a transformed position plays exactly like the
+ * original one.
+ *
+ * The canonical orientation of a position is the transform giving the
+ * smallest Zobrist key, so the 8 symmetric positions share one canonical key.
+ * A move found in the canonical orientation is mapped back to the real board
+ * with revert.
+ */
+public final class Symmetry {
+
+    /**
+     * Number of transforms.
+     */
+    public static final int COUNT = 8;
+    /**
+     * The transform leaving the board as it is.
+     */
+    public static final int IDENTITY = 0;
+
+    // Cell index x*9+y moved by each transform
+    private static final int[][] CELLS = new int[COUNT][81];
+    private static final int[][] INVERSE_CELLS = new int[COUNT][81];
+    // 9-bit masks of a 3x3 board, microboards or the cells of one microboard
+    private static final int[][] MASKS = new int[COUNT][512];
+    private static final int[] INVERSE = new int[COUNT];
+
+    static {
+        for (int t = 0; t < COUNT; t++) {
+            for (int cell = 0; cell < 81; cell++) {
+                int moved = transform(t, cell / 9, cell % 9, 8);
+                CELLS[t][cell] = moved;
+                INVERSE_CELLS[t][moved] = cell;
+            }
+            int[] bits = new int[9];
+            for (int bit = 0; bit < 9; bit++) {
+                int moved = transform(t, bit / 3, bit % 3, 2);
+                bits[bit] = moved / 9 * 3 + moved % 9;
+            }
+            for (int mask = 0; mask < 512; mask++) {
+                for (int bit = 0; bit < 9; bit++) {
+                    if ((mask & 1 << bit) != 0)
+                        MASKS[t][mask] |= 1 << bits[bit];
+                }
+            }
+        }
+        for (int t = 0; t < COUNT; t++) {
+            for (int inverse = 0; inverse < COUNT; inverse++) {
+                if (CELLS[inverse][CELLS[t][1]] == 1 && CELLS[inverse][CELLS[t][9]] == 9)
+                    INVERSE[t] = inverse;
+            }
+        }
+    }
+
+    private Symmetry() {
+    }
+
+    /**
+     * @param transform The transform
+     * @param cell Cell index x*9+y
+     * @return The cell index the transform moves the cell to
+     */
+    public static int cell(int transform, int cell) {
+        return CELLS[transform][cell];
+    }
+
+    /**
+     * @param transform The transform
+     * @param cell Cell index x*9+y on the transformed board
+     * @return The cell index on the original board
+     */
+    public static int revertCell(int transform, int cell) {
+        return INVERSE_CELLS[transform][cell];
+    }
+
+    /**
+     * @param transform The transform
+     * @param mask 9-bit mask of a 3x3 board, as in IField.getCellMask or IField.getMicroboardMask
+     * @return The mask moved by the transform
+     */
+    public static int mask(int transform, int mask) {
+        return MASKS[transform][mask];
+    }
+
+    /**
+     * @return The transform undoing the given one
+     */
+    public static int inverse(int transform) {
+        return INVERSE[transform];
+    }
+
+    /**
+     * @return The move on the transformed board
+     */
+    public static IMove apply(int transform, IMove move) {
+        return Move.of(CELLS[transform][move.getX() * 9 + move.getY()]);
+    }
+
+    /**
+     * @param transform The transform the move's board was made with, e.g. from canonicalKey
+     * @param move A move on the transformed board
+     * @return The move on the original board
+     */
+    public static IMove revert(int transform, IMove move) {
+        return Move.of(INVERSE_CELLS[transform][move.getX() * 9 + move.getY()]);
+    }
+
+    /**
+     * The Zobrist key the position would have after the transform, the same
+     * as IGameState.getZobristKey() of the transformed position.
+     */
+    public static long key(IGameState state, int transform) {
+        IField field = state.getField();
+        long key = Zobrist.active(MASKS[transform][field.getActiveMicroboards()]);
+        if (state.getMoveNumber() % 2 != 0)
+            key ^= Zobrist.SIDE;
+        for (int board = 0; board < 9; board++) {
+            for (int player = 0; player < 2; player++) {
+                int cells = field.getCellMask(board / 3, board % 3, player);
+                for (; cells != 0; cells &= cells - 1) {
+                    int bit = Integer.numberOfTrailingZeros(cells);
+                    int moved = CELLS[transform][(board / 3 * 3 + bit / 3) * 9 + board % 3 * 3 + bit % 3];
+                    key ^= Zobrist.cell(player, moved / 9, moved % 9);
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * The smallest Zobrist key of the 8 transforms of the position.
+     * @param state The position
+     * @param transform Receives the transform with the smallest key, may be null
+     * @return The canonical key, the same for all 8 symmetric positions
+     */
+    public static long canonicalKey(IGameState state, int[] transform) {
+        IField field = state.getField();
+        long[] keys = new long[COUNT];
+        long base = state.getMoveNumber() % 2 == 0 ? 0 : Zobrist.SIDE;
+        for (int t = 0; t < COUNT; t++) {
+            keys[t] = base ^ Zobrist.active(MASKS[t][field.getActiveMicroboards()]);
+        }
+        for (int board = 0; board < 9; board++) {
+            for (int player = 0; player < 2; player++) {
+                int cells = field.getCellMask(board / 3, board % 3, player);
+                for (; cells != 0; cells &= cells - 1) {
+                    int bit = Integer.numberOfTrailingZeros(cells);
+                    int cell = (board / 3 * 3 + bit / 3) * 9 + board % 3 * 3 + bit % 3;
+                    for (int t = 0; t < COUNT; t++) {
+                        int moved = CELLS[t][cell];
+                        keys[t] ^= Zobrist.cell(player, moved / 9, moved % 9);
+                    }
+                }
+            }
+        }
+        int best = 0;
+        for (int t = 1; t < COUNT; t++) {
+            if (keys[t] < keys[best])
+                best = t;
+        }
+        if (transform != null)
+            transform[0] = best;
+        return keys[best];
+    }
+
+    /**
+     * @param state The position
+     * @return The canonical key, the same for all 8 symmetric positions
+     */
+    public static long canonicalKey(IGameState state) {
+        return canonicalKey(state, null);
+    }
+
+    /**
+     * @param state The position
+     * @return The transform that moves the position to its canonical orientation
+     */
+    public static int canonicalTransform(IGameState state) {
+        int[] transform = new int[1];
+        canonicalKey(state, transform);
+        return transform[0];
+    }
+
+    /**
+     * Makes a transformed copy of a position.
+     * @param state The position, it is not changed
+     * @param transform The transform
+     * @return A new position with the board, macroboard and available microboards moved by the transform
+     */
+    public static GameState transform(IGameState state, int transform) {
+        IField field = state.getField();
+        GameState moved = new GameState();
+        IField target = moved.getField();
+        for (int cell = 0; cell < 81; cell++) {
+            int owner = field.getCellOwner(cell / 9, cell % 9);
+            if (owner != IField.NO_OWNER) {
+                int to = CELLS[transform][cell];
+                target.setCellOwner(to / 9, to % 9, owner);
+            }
+        }
+        for (int board = 0; board < 9; board++) {
+            int to = Integer.numberOfTrailingZeros(MASKS[transform][1 << board]);
+            target.setMicroboardState(to / 3, to % 3, field.getMicroboardState(board / 3, board % 3));
+        }
+        target.setActiveMicroboards(MASKS[transform][field.getActiveMicroboards()]);
+        moved.setMoveNumber(state.getMoveNumber());
+        moved.setRoundNumber(state.getRoundNumber());
+        moved.setTimePerMove(state.getTimePerMove());
+        return moved;
+    }
+
+    // Transposes when bit 0 is set, then mirrors x on bit 1 and y on bit 2
+    private static int transform(int t, int x, int y, int max) {
+        if ((t & 1) != 0) {
+            int swap = x;
+            x = y;
+            y = swap;
+        }
+        if ((t & 2) != 0)
+            x = max - x;
+        if ((t & 4) != 0)
+            y = max - y;
+        return x * 9 + y;
+    }
+}
@@ -0,0 +1,126 @@
+package dk.easv.bll.game;
+
+/**
+ * Time keeping for one bot, turning the time per move of the game into a
+ * deadline for each move.
+ *
+ * Call start at the beginning of doMove and finish just before returning.
+ * The deadline leaves a safety margin of the time per move for returning the
+ * move and for the game applying it, at least MIN_MARGIN_NS, and twice that on
+ * the first move of a bot, which runs on cold code and usually allocates its
+ * search structures. When finish sees that a move went past its deadline, e.g.
+ * because of a garbage collection, the overrun is added to the margin of the
+ * next moves, and it shrinks again while moves are in time. A move with only
+ * one legal choice gets no time at all.
+ *
+ * All times are System.nanoTime() values. isTimeUp only reads the clock on
+ * every CHECK_INTERVAL-th call, so it can be called for every iteration of a
+ * search loop.
+ */
+public class TimeManager {
+
+    /**
+     * Smallest safety margin, in nanoseconds.
+     */
+    public static final long MIN_MARGIN_NS = 20_000_000L;
+    /**
+     * Default share of the time per move kept as safety margin.
+     */
+    public static final double DEFAULT_MARGIN = 0.05;
+    private static final int CHECK_INTERVAL = 64;
+
+    private final double margin;
+    // Largest recent overrun of the deadline
+    private long overrun = 0;
+    private long start;
+    private long deadline;
+    private int calls;
+    private boolean timeUp;
+
+    public TimeManager() {
+        this(DEFAULT_MARGIN);
+    }
+
+    /**
+     * @param margin Share of the time per move kept as safety margin, between 0 and 1
+     */
+    public TimeManager(double margin) {
+        if (margin < 0 || margin >= 1)
+            throw new IllegalArgumentException("Margin must be at least 0 and below 1: " + margin);
+        this.margin = margin;
+    }
+
+    /**
+     * Starts the clock for a move.
+     * @param state The position to move in, with the time per move of the game
+     * @return The deadline of the move
+     */
+    public long start(IGameState state) {
+        start = System.nanoTime();
+        long budget = state.getTimePerMove() * 1_000_000L;
+        long reserve = Math.max(MIN_MARGIN_NS, (long) (budget * margin)) + overrun;
+        if (state.getMoveNumber() < 2)
+            reserve *= 2;
+        if (state.getField().countAvailableMoves() <= 1)
+            reserve = budget;
+        deadline = start + Math.max(0, budget - reserve);
+        calls = 0;
+        timeUp = false;
+        return deadline;
+    }
+
+    /**
+     * Stops the clock of the move, and learns from how late it was.
+     * @return Nanoseconds the move went past its deadline, negative when it was in time
+     */
+    public long finish() {
+        long late = System.nanoTime() - deadline;
+        if (late > overrun)
+            overrun = late;
+        else
+            overrun -= overrun / 8;
+        return late;
+    }
+
+    /**
+     * @return The deadline of the current move
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @param share Share of the time of the move, between 0 and 1
+     * @return The time when the share of the move's time has passed
+     */
+    public long getDeadline(double share) {
+        return start + (long) ((deadline - start) * share);
+    }
+
+    /**
+     * @return Nanoseconds left until the deadline, 0 if it has passed
+     */
+    public long getRemaining() {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * Cheap check for use inside search loops, only reads the clock on every
+     * CHECK_INTERVAL-th call. Once the time is up it stays up until the next start.
+     * @return Returns true when the deadline has passed, otherwise returns false.
+     */
+    public boolean isTimeUp() {
+        if (!timeUp && calls++ % CHECK_INTERVAL == 0)
+            timeUp = System.nanoTime() >= deadline;
+        return timeUp;
+    }
+
+    /**
+     * @return Returns true when the deadline has passed, otherwise returns false.
+     */
+    public boolean isTimeUpNow() {
+        if (!timeUp)
+            timeUp = System.nanoTime() >= deadline;
+        return timeUp;
+    }
+}
@@ -1,8 +1,15 @@
 package dk.easv.bll.move;
 
-import java.util.Objects;
-
 public class Move implements IMove{
+    // The 81 canonical moves, indexed by x*9 + y
+    private static final Move[] MOVES = new Move[81];
+
+    static {
+        for (int i = 0; i < MOVES.length; i++) {
+            MOVES[i] = new CanonicalMove(i / 9, i % 9);
+        }
+    }
+
     int x=0;
     int y=0;
 
@@ -11,6 +18,29 @@ public class Move implements IMove{
         this.y=y;
     }
 
+    /**
+     * Returns the shared, immutable instance of a move. No object is allocated.
+     * @param x Column, 0-8
+     * @param y Row, 0-8
+     * @return The canonical move (x,y)
+     */
+    public static Move of(int x, int y) {
+        if (x < 0 || 9 <= x || y < 0 || 9 <= y)
+            throw new IllegalArgumentException("Move outside the board (" + x + "," + y + ")");
+        return MOVES[x * 9 + y];
+    }
+
+    /**
+     * Returns the shared, immutable instance of a move. No object is allocated.
+     * @param index Cell index x*9 + y, 0-80
+     * @return The canonical move with the given cell index
+     */
+    public static Move of(int index) {
+        if (index < 0 || MOVES.length <= index)
+            throw new IllegalArgumentException("Cell index outside the board " + index);
+        return MOVES[index];
+    }
+
     public void setY(int y){
         this.y=y;
     }
@@ -29,6 +59,13 @@ public class Move implements IMove{
         return y;
     }
 
+    /**
+     * @return Cell index of the move, x*9 + y
+     */
+    public int getIndex() {
+        return x * 9 + y;
+    }
+
     @Override
     public String toString() {
         return "("+x+","+y+")";
@@ -37,13 +74,33 @@ public class Move implements IMove{
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Move)) return false;
         Move move = (Move) o;
         return x == move.x && y == move.y;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y);
+        return x * 9 + y;
+    }
+
+    /**
+     * Shared move returned by Move.of, it can not be changed.
+     */
+    private static final class CanonicalMove extends Move {
+
+        CanonicalMove(int x, int y) {
+            super(x, y);
+        }
+
+        @Override
+        public void setY(int y) {
+            throw new UnsupportedOperationException("Moves returned by Move.of can not be changed");
+        }
+
+        @Override
+        public void setX(int x) {
+            throw new UnsupportedOperationException("Moves returned by Move.of can not be changed");
+        }
     }
 }
@@ -0,0 +1,307 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+/**
+ * Iterative deepening negamax search with alpha-beta pruning.
+ *
+ * Moves are generated by the field and played with GameManager.applyMove/undoMove
+ * on a private copy of the position, so the search only ever considers moves the
+ * game accepts. Every iteration searches the principal variation of the previous
+ * one first. When the deadline passes the running iteration is abandoned and
+ * the best move of the last completed depth is returned.
+ *
+ * An optional transposition table stores bounds and best moves of searched
+ * positions. Several searches can share one table from different threads,
+ * see ParallelAlphaBetaSearch.
+ */
+public class AlphaBetaSearch {
+
+    /**
+     * Score of a won game, minus the number of plies needed to win it.
+     */
+    public static final int WIN = 1_000_000;
+    static final int MAX_PLY = 82;
+    private static final int INFINITY = WIN + 1;
+
+    private final int[][] moves = new int[MAX_PLY][81];
+    private final int[][] pv = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private final int[] previousPv = new int[MAX_PLY];
+    private int previousPvLength;
+    private boolean followPv;
+
+    private GameState state;
+    private GameManager manager;
+    private ITranspositionTable table = null;
+    private PatternEvaluator evaluator = PatternEvaluator.DEFAULT;
+    private int depthOffset = 0;
+    private int rootRotation = 0;
+    private volatile boolean stopped;
+    private long deadline;
+    private boolean aborted;
+    private long nodes;
+    private int completedDepth;
+    private int score;
+
+    /**
+     * Searches the position with increasing depth until the deadline.
+     * @param position The position to search, it is copied
+     * @param deadline Deadline in System.nanoTime() time
+     * @return The best move of the deepest completed iteration, or null if there are no moves
+     */
+    public IMove search(IGameState position, long deadline) {
+        return search(position, deadline, MAX_PLY);
+    }
+
+    /**
+     * Searches the position with increasing depth until the deadline or the maximum depth.
+     * @param position The position to search, it is copied
+     * @param deadline Deadline in System.nanoTime() time
+     * @param maxDepth Maximum depth in plies
+     * @return The best move of the deepest completed iteration, or null if there are no moves
+     */
+    public IMove search(IGameState position, long deadline, int maxDepth) {
+        stopped = false;
+        return searchUnlessStopped(position, deadline, maxDepth);
+    }
+
+    // Like search, but keeps a stop that arrived before the search started
+    IMove searchUnlessStopped(IGameState position, long deadline, int maxDepth) {
+        state = new GameState(position);
+        manager = new GameManager(state);
+        manager.setCurrentPlayer(state.getMoveNumber() % 2);
+        this.deadline = deadline;
+        aborted = false;
+        nodes = 0;
+        completedDepth = 0;
+        score = 0;
+        previousPvLength = 0;
+
+        int count = state.getField().getAvailableMoves(moves[0]);
+        if (count == 0)
+            return null;
+        int bestMove = moves[0][0];
+
+        int depthLimit = Math.min(maxDepth, MAX_PLY - 1);
+        for (int depth = 1 + depthOffset; depth <= depthLimit; depth++) {
+            followPv = true;
+            int value = negamax(depth, 0, -INFINITY, INFINITY);
+            if (aborted)
+                break;
+            completedDepth = depth;
+            score = value;
+            if (pvLength[0] > 0)
+                bestMove = pv[0][0];
+            previousPvLength = pvLength[0];
+            System.arraycopy(pv[0], 0, previousPv, 0, previousPvLength);
+            // A proven result does not change with more depth
+            if (Math.abs(value) >= WIN - MAX_PLY || depth >= 81 - state.getMoveNumber())
+                break;
+        }
+        return Move.of(bestMove);
+    }
+
+    /**
+     * Stops a running search from another thread. The search returns the best
+     * move of the last completed depth.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    void resume() {
+        stopped = false;
+    }
+
+    /**
+     * @param table Table shared with other searches, or null to search without one
+     */
+    public void setTranspositionTable(ITranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @return The transposition table, or null if the search has none
+     */
+    public ITranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    /**
+     * @param evaluator Evaluation of the positions at the end of the search, PatternEvaluator.DEFAULT by default
+     */
+    public void setEvaluator(PatternEvaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Makes a helper search start deeper and try the root moves in another order,
+     * so helpers sharing a table with the main search explore different parts of the tree.
+     * @param helper Number of the helper, 0 for the main search
+     */
+    void setHelper(int helper) {
+        depthOffset = helper & 1;
+        rootRotation = helper;
+    }
+
+    /**
+     * @return Depth of the last completed iteration
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return Score of the last completed iteration, seen from the player to move
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return Number of positions visited by the last search
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        pvLength[ply] = 0;
+        if ((++nodes & 1023) == 0 && (stopped || System.nanoTime() >= deadline)) {
+            aborted = true;
+            return 0;
+        }
+
+        GameManager.GameOverState gameOver = manager.getGameOver();
+        if (gameOver == GameManager.GameOverState.Win)
+            return -(WIN - ply); // the player who just moved has won
+        if (gameOver == GameManager.GameOverState.Tie)
+            return 0;
+        if (depth == 0)
+            return evaluate();
+
+        long key = 0;
+        int tableMove = -1;
+        if (table != null) {
+            key = state.getZobristKey();
+            long entry = table.probe(key);
+            if (entry != 0) {
+                tableMove = ITranspositionTable.move(entry);
+                if (ply > 0 && ITranspositionTable.depth(entry) >= depth) {
+                    int value = fromTable(ITranspositionTable.score(entry), ply);
+                    int bound = ITranspositionTable.bound(entry);
+                    if (bound == ITranspositionTable.EXACT
+                            || bound == ITranspositionTable.LOWER_BOUND && value >= beta
+                            || bound == ITranspositionTable.UPPER_BOUND && value <= alpha)
+                        return value;
+                }
+            }
+        }
+
+        int[] buffer = moves[ply];
+        int count = state.getField().getAvailableMoves(buffer);
+        if (count == 0)
+            return 0;
+        if (ply == 0 && rootRotation > 0)
+            rotate(buffer, count, rootRotation % count);
+        if (tableMove >= 0)
+            moveToFront(buffer, count, tableMove);
+        orderPvMove(buffer, count, ply);
+
+        int originalAlpha = alpha;
+        int bestMove = -1;
+        int best = -INFINITY;
+        for (int i = 0; i < count; i++) {
+            int move = buffer[i];
+            manager.applyMove(move / 9, move % 9);
+            int value = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            manager.undoMove();
+            if (aborted)
+                return 0;
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                if (value > alpha) {
+                    alpha = value;
+                    pv[ply][0] = move;
+                    System.arraycopy(pv[ply + 1], 0, pv[ply], 1, pvLength[ply + 1]);
+                    pvLength[ply] = pvLength[ply + 1] + 1;
+                    if (alpha >= beta)
+                        break;
+                }
+            }
+        }
+        if (table != null) {
+            int bound = best >= beta ? ITranspositionTable.LOWER_BOUND
+                    : best > originalAlpha ? ITranspositionTable.EXACT : ITranspositionTable.UPPER_BOUND;
+            table.store(key, bestMove, depth, bound, toTable(best, ply));
+        }
+        return best;
+    }
+
+    // Win scores are stored relative to the position, not to the root
+    private static int toTable(int value, int ply) {
+        if (value >= WIN - MAX_PLY)
+            return value + ply;
+        if (value <= -(WIN - MAX_PLY))
+            return value - ply;
+        return value;
+    }
+
+    private static int fromTable(int value, int ply) {
+        if (value >= WIN - MAX_PLY)
+            return value - ply;
+        if (value <= -(WIN - MAX_PLY))
+            return value + ply;
+        return value;
+    }
+
+    private static void moveToFront(int[] buffer, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (buffer[i] == move) {
+                buffer[i] = buffer[0];
+                buffer[0] = move;
+                return;
+            }
+        }
+    }
+
+    private static void rotate(int[] buffer, int count, int distance) {
+        for (int n = 0; n < distance; n++) {
+            int first = buffer[0];
+            System.arraycopy(buffer, 1, buffer, 0, count - 1);
+            buffer[count - 1] = first;
+        }
+    }
+
+    // Moves the move of the previous principal variation to the front while still following it
+    private void orderPvMove(int[] buffer, int count, int ply) {
+        if (!followPv)
+            return;
+        if (ply >= previousPvLength) {
+            followPv = false;
+            return;
+        }
+        int pvMove = previousPv[ply];
+        for (int i = 0; i < count; i++) {
+            if (buffer[i] == pvMove) {
+                buffer[i] = buffer[0];
+                buffer[0] = pvMove;
+                return;
+            }
+        }
+        followPv = false;
+    }
+
+    /**
+     * Static evaluation from the side to move, see PatternEvaluator.
+     */
+    private int evaluate() {
+        return evaluator.evaluate(state.getField(), manager.getCurrentPlayer());
+    }
+}
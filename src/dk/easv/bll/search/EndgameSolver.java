@@ -0,0 +1,270 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+/**
+ * Solves positions with few playable cells left, finding out whether the
+ * player to move wins, loses or draws with perfect play.
+ *
+ * The game tree is searched to the end with alpha-beta over the values
+ * -1, 0 and 1. Proven results, and the bounds a narrowed window gives, are
+ * kept in an EndgameTable, so positions reached again are not searched again,
+ * also in later games when the table is mapped to a file.
+ *
+ * A search gives up when the node budget or the deadline is used, and the
+ * position is then unknown.
+ */
+public class EndgameSolver {
+
+    public static final int UNKNOWN = 0;
+    public static final int LOSS = 1;
+    public static final int DRAW = 2;
+    public static final int WIN = 3;
+    // Bounds stored in the table, besides the exact results
+    private static final int AT_LEAST_DRAW = 4;
+    private static final int AT_MOST_DRAW = 5;
+
+    private static final int DEFAULT_MAX_EMPTY = 20;
+    private static final long DEFAULT_NODE_BUDGET = 2_000_000;
+
+    // Taken from EndgameTable.shared() on the first solve when not set
+    private EndgameTable table;
+    private final int[][] moves = new int[82][81];
+    private int maxEmpty = DEFAULT_MAX_EMPTY;
+    private long nodeBudget = DEFAULT_NODE_BUDGET;
+
+    private GameState state;
+    private GameManager manager;
+    private long deadline;
+    private long nodes;
+    private boolean aborted;
+    private volatile boolean stopped = false;
+    private int bestMove;
+
+    /**
+     * Creates a solver using the table shared by all solvers. The table is
+     * only taken on the first solve, so a bot that never plays does not
+     * allocate it.
+     */
+    public EndgameSolver() {
+        this(null);
+    }
+
+    /**
+     * @param table Table of proven results, or null for the shared one
+     */
+    public EndgameSolver(EndgameTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @param table Table of proven results used by the following solves, or null for the shared one
+     */
+    public void setTable(EndgameTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @param maxEmpty Positions with more playable cells than this are not solved
+     */
+    public void setMaxEmpty(int maxEmpty) {
+        this.maxEmpty = maxEmpty;
+    }
+
+    /**
+     * @param nodeBudget Number of positions a search may visit before it gives up
+     */
+    public void setNodeBudget(long nodeBudget) {
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * Solves the position.
+     * @param position The position to solve, it is copied
+     * @param deadline Deadline in System.nanoTime() time
+     * @return WIN, LOSS or DRAW for the player to move, or UNKNOWN if the
+     * position has too many playable cells or could not be solved in time
+     */
+    public int solve(IGameState position, long deadline) {
+        bestMove = -1;
+        if (countPlayableCells(position.getField()) > maxEmpty)
+            return UNKNOWN;
+        if (table == null)
+            table = EndgameTable.shared();
+        state = new GameState(position);
+        manager = new GameManager(state);
+        manager.setCurrentPlayer(state.getMoveNumber() % 2);
+        if (GameManager.isGameOver(state.getField()))
+            return UNKNOWN;
+        this.deadline = deadline;
+        nodes = 0;
+        aborted = false;
+
+        int[] buffer = moves[0];
+        int count = state.getField().getAvailableMoves(buffer);
+        if (count == 0)
+            return UNKNOWN;
+        int best = -2;
+        int alpha = -1;
+        for (int i = 0; i < count && best < 1; i++) {
+            manager.applyMove(buffer[i] / 9, buffer[i] % 9);
+            int value = -solve(1, -1, -alpha);
+            manager.undoMove();
+            if (aborted)
+                return UNKNOWN;
+            if (value > best) {
+                best = value;
+                bestMove = buffer[i];
+                alpha = Math.max(alpha, value);
+            }
+        }
+        table.put(state.getZobristKey(), best + 2);
+        return best + 2;
+    }
+
+    /**
+     * @return The move that gives the result of the last solve, or null if it was unknown
+     */
+    public IMove getBestMove() {
+        return bestMove < 0 ? null : Move.of(bestMove);
+    }
+
+    /**
+     * Solves the position and returns a move that wins or draws for sure.
+     * @param position The position to solve, it is copied
+     * @param deadline Deadline in System.nanoTime() time
+     * @return A winning or drawing move, or null if none was proven
+     */
+    public IMove findProvenMove(IGameState position, long deadline) {
+        int result = solve(position, deadline);
+        return result == WIN || result == DRAW ? getBestMove() : null;
+    }
+
+    /**
+     * Decides the game when its result is certain with perfect play.
+     * @param position The position of a game in progress
+     * @param deadline Deadline in System.nanoTime() time
+     * @return The player who wins, IField.TIED for a draw, or IField.NO_OWNER if undecided
+     */
+    public int adjudicate(IGameState position, long deadline) {
+        int result = solve(position, deadline);
+        int player = position.getMoveNumber() % 2;
+        switch (result) {
+            case WIN:
+                return player;
+            case LOSS:
+                return 1 - player;
+            case DRAW:
+                return IField.TIED;
+            default:
+                return IField.NO_OWNER;
+        }
+    }
+
+    /**
+     * Stops a running solve from another thread, it gives up as if its budget
+     * was used. Solves started after it give up within their first thousand positions, until resume.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Lets solves run again after stop.
+     */
+    public void resume() {
+        stopped = false;
+    }
+
+    /**
+     * @return Number of positions visited by the last solve
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return Number of empty cells in microboards that are not decided yet
+     */
+    public static int countPlayableCells(IField field) {
+        int open = field.getMicroboardMask(IField.NO_OWNER);
+        int count = 0;
+        for (int i = 0; i < 9; i++) {
+            if ((open & 1 << i) != 0) {
+                int occupied = field.getCellMask(i / 3, i % 3, 0) | field.getCellMask(i / 3, i % 3, 1);
+                count += 9 - Integer.bitCount(occupied);
+            }
+        }
+        return count;
+    }
+
+    // Negamax value, -1, 0 or 1, of the position for the player to move
+    private int solve(int ply, int alpha, int beta) {
+        GameManager.GameOverState gameOver = manager.getGameOver();
+        if (gameOver == GameManager.GameOverState.Win)
+            return -1; // the player who just moved has won
+        if (gameOver == GameManager.GameOverState.Tie)
+            return 0;
+        if (++nodes > nodeBudget || (nodes & 1023) == 0 && (stopped || System.nanoTime() >= deadline)) {
+            aborted = true;
+            return 0;
+        }
+
+        long key = state.getZobristKey();
+        int known = table.get(key);
+        switch (known) {
+            case LOSS:
+                return -1;
+            case DRAW:
+                return 0;
+            case WIN:
+                return 1;
+            case AT_LEAST_DRAW:
+                if (beta <= 0)
+                    return 0;
+                alpha = Math.max(alpha, 0);
+                break;
+            case AT_MOST_DRAW:
+                if (alpha >= 0)
+                    return 0;
+                beta = Math.min(beta, 0);
+                break;
+        }
+
+        int[] buffer = moves[ply];
+        int count = state.getField().getAvailableMoves(buffer);
+        if (count == 0)
+            return 0;
+        int originalAlpha = alpha;
+        int best = -1;
+        for (int i = 0; i < count; i++) {
+            manager.applyMove(buffer[i] / 9, buffer[i] % 9);
+            int value = -solve(ply + 1, -beta, -alpha);
+            manager.undoMove();
+            if (aborted)
+                return 0;
+            if (value > best) {
+                best = value;
+                if (value > alpha)
+                    alpha = value;
+                if (alpha >= beta)
+                    break;
+            }
+        }
+
+        int result;
+        if (best >= beta)
+            result = best == 1 || known == AT_MOST_DRAW ? best + 2 : AT_LEAST_DRAW;
+        else if (best <= originalAlpha)
+            result = best == -1 || known == AT_LEAST_DRAW ? best + 2 : AT_MOST_DRAW;
+        else
+            result = best + 2;
+        table.put(key, result);
+        return best;
+    }
+}
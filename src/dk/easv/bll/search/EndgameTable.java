@@ -0,0 +1,141 @@
+package dk.easv.bll.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Table of proven endgame results by Zobrist key, used by EndgameSolver.
+ *
+ * An entry is one long: the key with its lowest 3 bits replaced by the result,
+ * so it is written with a single store and can be shared between threads
+ * without locks. The table is a direct ByteBuffer, or a file read through
+ * FileChannel.map so proven results are kept between runs.
+ *
+ * Games that must not share results, like the bots of a tournament, can give
+ * each bot a table of its own with withSharedSize.
+ */
+public class EndgameTable {
+
+    // 1 GB, the most a single ByteBuffer or file mapping can hold
+    private static final int MAX_ENTRIES = 1 << 27;
+    private static final long RESULT_BITS = 7;
+
+    private static EndgameTable shared = null;
+
+    private final ByteBuffer table;
+    private final int mask;
+
+    /**
+     * Allocates a table in direct memory.
+     * @param entries Number of entries, rounded down to a power of two
+     */
+    public EndgameTable(int entries) {
+        this(ByteBuffer.allocateDirect((int) (checkEntries(entries) * 8L)).order(ByteOrder.nativeOrder()));
+    }
+
+    private EndgameTable(ByteBuffer table) {
+        this.table = table;
+        mask = table.capacity() / 8 - 1;
+    }
+
+    /**
+     * Maps the table to a file, creating it if needed.
+     * @param entries Number of entries, rounded down to a power of two
+     * @param file File holding the table
+     * @throws IOException If the file could not be mapped
+     */
+    public static EndgameTable mapped(int entries, Path file) throws IOException {
+        long bytes = checkEntries(entries) * 8L;
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new EndgameTable(channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes)
+                    .order(ByteOrder.nativeOrder()));
+        }
+    }
+
+    /**
+     * The table shared by all endgame solvers. It is created on first use, with
+     * the size in megabytes from the system property uttt.endgame.mb (default 16,
+     * at most 1024), mapped to the file in the system property uttt.endgame.file if set.
+     */
+    public static synchronized EndgameTable shared() {
+        if (shared == null) {
+            int entries = sharedEntries();
+            String file = System.getProperty("uttt.endgame.file");
+            if (file == null)
+                shared = new EndgameTable(entries);
+            else {
+                try {
+                    shared = mapped(entries, Paths.get(file));
+                }
+                catch (IOException ex) {
+                    System.err.println("Could not map " + file + ", using memory only: " + ex);
+                    shared = new EndgameTable(entries);
+                }
+                EndgameTable table = shared;
+                Runtime.getRuntime().addShutdownHook(new Thread(table::flush, "Endgame table flush"));
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Allocates a table in direct memory with the size of the shared one, for
+     * a solver that should not share its results with other bots.
+     */
+    public static EndgameTable withSharedSize() {
+        return new EndgameTable(sharedEntries());
+    }
+
+    private static int sharedEntries() {
+        return (int) Math.min(MAX_ENTRIES, Long.getLong("uttt.endgame.mb", 16) << 17);
+    }
+
+    /**
+     * @param key Zobrist key of the position
+     * @return The stored result, 1-7, or 0 if the position is not in the table
+     */
+    public int get(long key) {
+        long entry = table.getLong(index(key));
+        return (entry & ~RESULT_BITS) == (key & ~RESULT_BITS) ? (int) (entry & RESULT_BITS) : 0;
+    }
+
+    /**
+     * @param key Zobrist key of the position
+     * @param result Result to store, 1-7
+     */
+    public void put(long key, int result) {
+        table.putLong(index(key), key & ~RESULT_BITS | result);
+    }
+
+    public void clear() {
+        for (int i = 0; i < table.capacity(); i += 8) {
+            table.putLong(i, 0);
+        }
+    }
+
+    /**
+     * Writes the table to its file now, if it is mapped to one.
+     */
+    public void flush() {
+        if (table instanceof MappedByteBuffer)
+            ((MappedByteBuffer) table).force();
+    }
+
+    private int index(long key) {
+        return ((int) (key >>> 32 ^ key) >>> 3 & mask) << 3;
+    }
+
+    private static int checkEntries(int entries) {
+        if (entries < 1 || entries > MAX_ENTRIES)
+            throw new IllegalArgumentException("Entries must be between 1 and 2^27: " + entries);
+        return Integer.highestOneBit(entries);
+    }
+}
@@ -0,0 +1,59 @@
+package dk.easv.bll.search;
+
+/**
+ * Table of alpha-beta search results by Zobrist key, safe to share between threads.
+ *
+ * Results are packed in one long: the score (bits 0-31), the best move + 1
+ * (bits 32-38), the depth (bits 39-45) and the bound type (bits 46-47).
+ * A packed result is never 0, so 0 is used for a miss.
+ */
+public interface ITranspositionTable {
+
+    int EXACT = 1;
+    int LOWER_BOUND = 2;
+    int UPPER_BOUND = 3;
+
+    /**
+     * @param key Zobrist key of the position
+     * @return The packed result of the position, or 0 if it is not in the table
+     */
+    long probe(long key);
+
+    /**
+     * Stores a search result. The table decides whether it replaces what is there.
+     * @param key Zobrist key of the position
+     * @param move Best move as cell index, or -1 if unknown
+     * @param depth Remaining depth of the search, 0-127
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param score Score of the position
+     */
+    void store(long key, int move, int depth, int bound, int score);
+
+    void clear();
+
+    static long pack(int move, int depth, int bound, int score) {
+        return (score & 0xFFFFFFFFL)
+                | (long) (move + 1) << 32
+                | (long) depth << 39
+                | (long) bound << 46;
+    }
+
+    static int score(long data) {
+        return (int) data;
+    }
+
+    /**
+     * @return Best move as cell index, or -1 if unknown
+     */
+    static int move(long data) {
+        return (int) (data >>> 32 & 0x7F) - 1;
+    }
+
+    static int depth(long data) {
+        return (int) (data >>> 39 & 0x7F);
+    }
+
+    static int bound(long data) {
+        return (int) (data >>> 46 & 3);
+    }
+}
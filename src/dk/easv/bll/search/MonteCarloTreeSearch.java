@@ -0,0 +1,562 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.PlayoutEngine;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monte Carlo Tree Search (UCT) over the real game rules.
+ *
+ * The tree is walked in place on a private GameState with
+ * GameManager.applyMove/undoMove, and leaves are evaluated with random
+ * playouts from the PlayoutEngine.
+ *
+ * The tree is kept between calls to setPosition. When the new position is a
+ * child or grandchild of the previous root, e.g. our last move followed by the
+ * opponent's reply, that subtree becomes the new root and the work already
+ * done on it is reused.
+ *
+ * With more than one thread, all threads search the same tree. Node statistics
+ * are updated with CAS only, and a thread passing through a node counts a
+ * visit without a score right away (virtual loss), so the other threads are
+ * steered towards other branches until its playout result arrives.
+ *
+ * The nodes live in a NodeArena of preallocated primitive arrays instead of
+ * one object per node, so the tree makes no garbage and its memory is fixed,
+ * however long the search runs. When the arena is full the threads pause and
+ * the nodes are recycled: the least visited nodes lose their subtrees, but
+ * keep their own statistics as leaves, until at most half of the arena is
+ * used, and the search goes on growing the tree where it is visited most. On
+ * setPosition the reused subtree is moved to the front of the arena and the
+ * rest of it is recycled as well.
+ */
+public class MonteCarloTreeSearch {
+
+    /**
+     * Default number of nodes in the arena, about 14 bytes each. Can be set
+     * with the system property uttt.mcts.nodes.
+     */
+    public static final int DEFAULT_NODES = 1 << 21;
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final int ROOT = 0;
+
+    private final Worker[] workers;
+    private final int capacity;
+    private NodeArena arena = null;
+    // The root position, every worker searches on its own copy of it
+    private GameState position = null;
+    private long iterations = 0;
+    private volatile boolean stopped = false;
+    // An expansion found the arena full, the threads stop so it can be pruned
+    private volatile boolean full = false;
+
+    public MonteCarloTreeSearch() {
+        this(1);
+    }
+
+    /**
+     * @param threads Number of threads searching the tree
+     */
+    public MonteCarloTreeSearch(int threads) {
+        this(threads, Integer.getInteger("uttt.mcts.nodes", DEFAULT_NODES));
+    }
+
+    /**
+     * @param threads Number of threads searching the tree
+     * @param capacity Number of nodes the tree can hold, allocated on the first setPosition
+     */
+    public MonteCarloTreeSearch(int threads, int capacity) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed: " + threads);
+        if (capacity < 82)
+            throw new IllegalArgumentException("Capacity must be at least 82 nodes: " + capacity);
+        this.capacity = capacity;
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    /**
+     * @return Number of threads searching the tree
+     */
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * Sets the position to search from, reusing the previous tree when the
+     * position was reached from the previous root. Also clears a stop.
+     * @param state The position to search from, it is copied
+     */
+    public void setPosition(IGameState state) {
+        stopped = false;
+        if (arena == null)
+            arena = new NodeArena(capacity);
+        int reused = arena.size() == 0 ? -1 : workers[0].findSubtree(state.getZobristKey());
+        position = new GameState(state);
+        for (Worker worker : workers) {
+            worker.setPosition(position);
+        }
+        if (reused >= 0)
+            arena.compact(reused);
+        else
+            arena.reset();
+        iterations = 0;
+    }
+
+    /**
+     * Searches until the deadline has passed or stop is called, on all threads.
+     * @param deadline Deadline in System.nanoTime() time
+     * @throws IllegalStateException if no position was set
+     */
+    public void search(long deadline) {
+        checkPosition();
+        while (true) {
+            full = false;
+            searchUntilFull(deadline);
+            if (!full || stopped || System.nanoTime() >= deadline)
+                return;
+            arena.prune(capacity / 2);
+        }
+    }
+
+    // Searches on all threads until the deadline, a stop or a full arena
+    private void searchUntilFull(long deadline) {
+        Thread[] helpers = new Thread[workers.length - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            Worker worker = workers[i + 1];
+            helpers[i] = new Thread(() -> worker.search(deadline), "MCTS helper " + i);
+            helpers[i].setDaemon(true);
+            helpers[i].start();
+        }
+        workers[0].search(deadline);
+        for (Thread helper : helpers) {
+            try {
+                helper.join();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Worker worker : workers) {
+            iterations += worker.iterations;
+        }
+    }
+
+    /**
+     * Stops a running search from another thread. Searches started after it
+     * stop right away, until the next setPosition.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return The most visited move from the root, or null if the root has no moves.
+     * @throws IllegalStateException if no position was set
+     */
+    public IMove getBestMove() {
+        checkPosition();
+        int first = arena.firstChild(ROOT);
+        int best = -1;
+        for (int child = first; first >= 0 && child < first + arena.childCount(ROOT); child++) {
+            if (best < 0 || arena.visits(child) > arena.visits(best))
+                best = child;
+        }
+        if (best >= 0)
+            return Move.of(arena.move(best));
+        int[] moves = new int[81];
+        int count = position.getField().getAvailableMoves(moves);
+        return count == 0 ? null : Move.of(moves[0]);
+    }
+
+    private void checkPosition() {
+        if (position == null)
+            throw new IllegalStateException("No position to search, call setPosition first");
+    }
+
+    /**
+     * @return Number of iterations since the last setPosition, on all threads
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return Number of playouts stored in the root, including reused ones
+     */
+    public int getRootVisits() {
+        return arena == null || arena.size() == 0 ? 0 : arena.visits(ROOT);
+    }
+
+    /**
+     * @return Number of nodes in the tree
+     */
+    public int getNodes() {
+        return arena == null ? 0 : arena.size();
+    }
+
+    /**
+     * @return Number of nodes the tree can hold
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Search state of one thread, walking its own copy of the root position.
+     */
+    private class Worker {
+        private final PlayoutEngine engine = new PlayoutEngine();
+        private final int[] moves = new int[81];
+        private final int[] path = new int[82];
+        private GameState state;
+        private GameManager manager;
+        private long iterations;
+
+        void setPosition(IGameState position) {
+            state = new GameState(position);
+            manager = new GameManager(state);
+            manager.setCurrentPlayer(state.getMoveNumber() % 2);
+        }
+
+        void search(long deadline) {
+            iterations = 0;
+            do {
+                iterate();
+                iterations++;
+            } while (!stopped && !full && System.nanoTime() < deadline);
+        }
+
+        private void iterate() {
+            NodeArena arena = MonteCarloTreeSearch.this.arena;
+            int node = ROOT;
+            arena.addVisit(node);
+            path[0] = node;
+            int depth = 0;
+
+            // Selection, counting the visit (virtual loss) on the way down
+            int first = arena.firstChild(node);
+            while (first >= 0 && arena.childCount(node) > 0
+                    && manager.getGameOver() == GameManager.GameOverState.Active) {
+                node = select(arena, node, first);
+                arena.addVisit(node);
+                manager.applyMove(arena.move(node) / 9, arena.move(node) % 9);
+                path[++depth] = node;
+                first = arena.firstChild(node);
+            }
+
+            // Expansion, unless another thread is expanding the node or the arena is full
+            if (first == NodeArena.UNEXPANDED && manager.getGameOver() == GameManager.GameOverState.Active) {
+                int count = state.getField().getAvailableMoves(moves);
+                first = arena.expand(node, moves, count);
+                if (first == NodeArena.UNEXPANDED)
+                    full = true;
+                if (first >= 0 && count > 0) {
+                    node = first + engine.nextInt(count);
+                    arena.addVisit(node);
+                    manager.applyMove(arena.move(node) / 9, arena.move(node) % 9);
+                    path[++depth] = node;
+                }
+            }
+
+            // Simulation
+            int winner;
+            if (manager.getGameOver() == GameManager.GameOverState.Active) {
+                engine.load(state);
+                winner = engine.playout();
+            }
+            else if (manager.getGameOver() == GameManager.GameOverState.Win)
+                winner = 1 - manager.getCurrentPlayer();
+            else
+                winner = PlayoutEngine.TIE;
+
+            // Backpropagation, a node is scored for the player who made its move
+            int player = manager.getCurrentPlayer();
+            for (int i = depth; i >= 0; i--) {
+                player = 1 - player;
+                if (winner == player)
+                    arena.addScore(path[i], 2);
+                else if (winner == PlayoutEngine.TIE)
+                    arena.addScore(path[i], 1);
+                if (i > 0)
+                    manager.undoMove();
+            }
+        }
+
+        private int select(NodeArena arena, int node, int first) {
+            double logVisits = Math.log(arena.visits(node));
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < first + arena.childCount(node); child++) {
+                long stats = arena.stats(child);
+                int visits = (int) (stats >>> 32);
+                if (visits == 0)
+                    return child;
+                double value = (int) stats / (2.0 * visits)
+                        + EXPLORATION * Math.sqrt(logVisits / visits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        // Finds the node of the given position among the root, its children and grandchildren
+        int findSubtree(long key) {
+            if (state.getZobristKey() == key)
+                return ROOT;
+            int first = arena.firstChild(ROOT);
+            for (int child = first; first >= 0 && child < first + arena.childCount(ROOT); child++) {
+                manager.applyMove(arena.move(child) / 9, arena.move(child) % 9);
+                int found = -1;
+                if (state.getZobristKey() == key)
+                    found = child;
+                else {
+                    int firstGrandChild = arena.firstChild(child);
+                    for (int grandChild = firstGrandChild; firstGrandChild >= 0
+                            && grandChild < firstGrandChild + arena.childCount(child); grandChild++) {
+                        manager.applyMove(arena.move(grandChild) / 9, arena.move(grandChild) % 9);
+                        boolean match = state.getZobristKey() == key;
+                        manager.undoMove();
+                        if (match) {
+                            found = grandChild;
+                            break;
+                        }
+                    }
+                }
+                manager.undoMove();
+                if (found >= 0)
+                    return found;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The nodes of the tree in parallel primitive arrays (structure of arrays),
+     * indexed by node number. The children of a node are one block of
+     * consecutive nodes, so a node only stores its first child and the number
+     * of children. The visits (upper 32 bits) and the score (lower 32 bits, 2
+     * per win and 1 per tie for the player who made the move) are packed in
+     * one long, so both are updated with a single atomic add.
+     *
+     * Blocks are allocated from the end of the used part. A node is expanded by
+     * the thread that claims it with a CAS, and its block is published by
+     * writing firstChild last, so other threads only see complete blocks.
+     */
+    private static final class NodeArena {
+        static final int UNEXPANDED = -1;
+        // A thread is expanding the node
+        static final int EXPANDING = -2;
+
+        private final AtomicLongArray stats;
+        private final AtomicIntegerArray firstChild;
+        private final byte[] moves;
+        private final byte[] childCounts;
+        private final AtomicInteger size = new AtomicInteger();
+        // Child blocks of the subtree kept by compact, sorted, and where they are moved to
+        private long[] blocks = new long[1024];
+        private int[] movedBlocks = new int[1024];
+        // Expanded nodes by visits, for prune
+        private long[] expanded = new long[1024];
+
+        NodeArena(int capacity) {
+            stats = new AtomicLongArray(capacity);
+            firstChild = new AtomicIntegerArray(capacity);
+            moves = new byte[capacity];
+            childCounts = new byte[capacity];
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        long stats(int node) {
+            return stats.get(node);
+        }
+
+        int visits(int node) {
+            return (int) (stats.get(node) >>> 32);
+        }
+
+        void addVisit(int node) {
+            stats.getAndAdd(node, 1L << 32);
+        }
+
+        void addScore(int node, int score) {
+            stats.getAndAdd(node, score);
+        }
+
+        int move(int node) {
+            return moves[node];
+        }
+
+        /**
+         * @return The first child, UNEXPANDED, or EXPANDING while another thread expands the node
+         */
+        int firstChild(int node) {
+            return firstChild.get(node);
+        }
+
+        int childCount(int node) {
+            return childCounts[node];
+        }
+
+        /**
+         * Adds the children of a node.
+         * @return The first child, or a negative number if another thread
+         * expands the node or the arena has no room for the children
+         */
+        int expand(int node, int[] childMoves, int count) {
+            if (!firstChild.compareAndSet(node, UNEXPANDED, EXPANDING))
+                return EXPANDING;
+            int first;
+            do {
+                first = size.get();
+                if (first + count > moves.length) {
+                    firstChild.set(node, UNEXPANDED);
+                    return UNEXPANDED;
+                }
+            } while (!size.compareAndSet(first, first + count));
+            for (int i = 0; i < count; i++) {
+                init(first + i, childMoves[i]);
+            }
+            childCounts[node] = (byte) count;
+            firstChild.set(node, first);
+            return first;
+        }
+
+        /**
+         * Empties the arena, leaving only a new root.
+         */
+        void reset() {
+            size.set(1);
+            init(ROOT, -1);
+        }
+
+        /**
+         * Makes a node the root, moving its subtree to the front of the arena
+         * and freeing all other nodes. Children are always allocated after
+         * their parent, and the kept blocks are moved in the order of their old
+         * indices, so every node moves to an index at or below its old one and
+         * the subtree is moved in place without overwriting unmoved nodes.
+         */
+        void compact(int root) {
+            int count = 0;
+            if (firstChild.get(root) >= 0)
+                count = addBlock(count, firstChild.get(root), childCounts[root]);
+            for (int i = 0; i < count; i++) {
+                int block = blockStart(i);
+                for (int node = block; node < block + (int) (blocks[i] & 0xFF); node++) {
+                    if (firstChild.get(node) >= 0)
+                        count = addBlock(count, firstChild.get(node), childCounts[node]);
+                }
+            }
+            Arrays.sort(blocks, 0, count);
+            if (movedBlocks.length < count)
+                movedBlocks = new int[blocks.length];
+            int next = 1;
+            for (int i = 0; i < count; i++) {
+                movedBlocks[i] = next;
+                next += (int) (blocks[i] & 0xFF);
+            }
+            copy(root, ROOT, count);
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < (int) (blocks[i] & 0xFF); j++) {
+                    copy(blockStart(i) + j, movedBlocks[i] + j, count);
+                }
+            }
+            size.set(next);
+        }
+
+        /**
+         * Frees the subtrees of the least visited nodes, which become leaves
+         * again with their statistics, until at most the given number of
+         * nodes is used, and moves the rest to the front of the arena. A node
+         * has at most as many visits as its parent, so the kept nodes are
+         * always the top of the tree. Only call it while no thread searches.
+         */
+        void prune(int keep) {
+            int count = 0;
+            for (int node = 0; node < size(); node++) {
+                if (firstChild.get(node) >= 0) {
+                    if (count == expanded.length)
+                        expanded = Arrays.copyOf(expanded, count * 2);
+                    // Packed as visits << 8 | number of children, to sort them by visits
+                    expanded[count++] = (long) visits(node) << 8 | childCounts[node];
+                }
+            }
+            Arrays.sort(expanded, 0, count);
+            // The most visited nodes keep their children while they fit, all nodes
+            // with as many visits as the first one that does not fit lose them
+            int used = 1;
+            long threshold = -1;
+            for (int i = count - 1; i >= 0; i--) {
+                used += (int) (expanded[i] & 0xFF);
+                if (used > keep) {
+                    threshold = expanded[i] >>> 8;
+                    break;
+                }
+            }
+            if (threshold < 0)
+                return;
+            for (int node = 0; node < size(); node++) {
+                if (firstChild.get(node) >= 0 && visits(node) <= threshold) {
+                    firstChild.set(node, UNEXPANDED);
+                    childCounts[node] = 0;
+                }
+            }
+            compact(ROOT);
+        }
+
+        // Blocks are packed as first node << 8 | number of nodes, to sort them by first node
+        private int addBlock(int count, int first, int nodes) {
+            if (count == blocks.length)
+                blocks = Arrays.copyOf(blocks, count * 2);
+            blocks[count] = (long) first << 8 | nodes;
+            return count + 1;
+        }
+
+        private int blockStart(int i) {
+            return (int) (blocks[i] >>> 8);
+        }
+
+        private void copy(int from, int to, int blockCount) {
+            int first = firstChild.get(from);
+            if (first >= 0) {
+                int low = 0;
+                int high = blockCount - 1;
+                while (blockStart(low) != first) {
+                    int middle = (low + high) >>> 1;
+                    if (blockStart(middle) < first)
+                        low = middle + 1;
+                    else
+                        high = middle;
+                }
+                first = movedBlocks[low];
+            }
+            stats.set(to, stats.get(from));
+            firstChild.set(to, first >= 0 ? first : UNEXPANDED);
+            moves[to] = moves[from];
+            childCounts[to] = childCounts[from];
+        }
+
+        private void init(int node, int move) {
+            stats.set(node, 0);
+            firstChild.set(node, UNEXPANDED);
+            moves[node] = (byte) move;
+            childCounts[node] = 0;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package dk.easv.bll.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Transposition table kept outside the garbage collected heap, so a table of
+ * gigabytes does not make the collector pauses longer.
+ *
+ * The memory is direct ByteBuffers of at most 1 GB each, or a memory-mapped
+ * file when the table should survive a restart. The Zobrist keys do not change
+ * between runs, so the results in a mapped file stay valid.
+ *
+ * The table is divided in buckets of two entries. The first entry keeps the
+ * deepest result (depth-preferred), the second is always replaced, so recent
+ * results are kept too. An entry is written lock-free like in TranspositionTable,
+ * the key XOR the data followed by the data.
+ *
+ * One table can be used by all searches of all games at the same time, see
+ * shared(). Games that must not share results, like the bots of a
+ * tournament, can give each bot a table of its own with withSharedSize.
+ */
+public class OffHeapTranspositionTable implements ITranspositionTable {
+
+    private static final int BUCKET_SHIFT = 5; // two entries of 16 bytes
+    private static final int CHUNK_SHIFT = 30;
+    private static final long MIN_BYTES = 1L << BUCKET_SHIFT;
+
+    private static OffHeapTranspositionTable shared = null;
+
+    private final ByteBuffer[] chunks;
+    private final int bucketsPerChunkShift;
+    private final long bucketMask;
+
+    /**
+     * Allocates a table in direct memory.
+     * @param bytes Size of the table, rounded down to a power of two
+     */
+    public OffHeapTranspositionTable(long bytes) {
+        this(new ByteBuffer[chunkCount(bytes)], bytes);
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkSize(bytes)).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    private OffHeapTranspositionTable(ByteBuffer[] chunks, long bytes) {
+        this.chunks = chunks;
+        bucketsPerChunkShift = Integer.numberOfTrailingZeros(chunkSize(bytes)) - BUCKET_SHIFT;
+        bucketMask = (Long.highestOneBit(bytes) >>> BUCKET_SHIFT) - 1;
+    }
+
+    /**
+     * Maps the table to a file, creating it if needed. Results already in the
+     * file are used, and results stored are written back to it by the OS, or
+     * right away on flush().
+     * @param bytes Size of the table, rounded down to a power of two
+     * @param file File holding the table
+     * @throws IOException If the file could not be mapped
+     */
+    public static OffHeapTranspositionTable mapped(long bytes, Path file) throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(bytes)];
+        long chunkSize = chunkSize(bytes);
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * chunkSize, chunkSize)
+                        .order(ByteOrder.nativeOrder());
+            }
+        }
+        return new OffHeapTranspositionTable(chunks, bytes);
+    }
+
+    private static int chunkCount(long bytes) {
+        if (bytes < MIN_BYTES)
+            throw new IllegalArgumentException("Table must be at least " + MIN_BYTES + " bytes: " + bytes);
+        return (int) (Long.highestOneBit(bytes) / chunkSize(bytes));
+    }
+
+    private static int chunkSize(long bytes) {
+        return (int) Math.min(1L << CHUNK_SHIFT, Long.highestOneBit(bytes));
+    }
+
+    /**
+     * The table shared by all search bots. It is created on first use, with
+     * the size in megabytes from the system property uttt.tt.mb (default 64),
+     * mapped to the file in the system property uttt.tt.file if set.
+     */
+    public static synchronized OffHeapTranspositionTable shared() {
+        if (shared == null) {
+            long bytes = sharedBytes();
+            String file = System.getProperty("uttt.tt.file");
+            if (file == null)
+                shared = new OffHeapTranspositionTable(bytes);
+            else {
+                try {
+                    shared = mapped(bytes, Paths.get(file));
+                }
+                catch (IOException ex) {
+                    System.err.println("Could not map " + file + ", using memory only: " + ex);
+                    shared = new OffHeapTranspositionTable(bytes);
+                }
+                OffHeapTranspositionTable table = shared;
+                Runtime.getRuntime().addShutdownHook(new Thread(table::flush, "Transposition table flush"));
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Allocates a table in direct memory with the size of the shared one, for
+     * a search that should not share its results with other bots.
+     */
+    public static OffHeapTranspositionTable withSharedSize() {
+        return new OffHeapTranspositionTable(sharedBytes());
+    }
+
+    private static long sharedBytes() {
+        return Long.getLong("uttt.tt.mb", 64) << 20;
+    }
+
+    @Override
+    public long probe(long key) {
+        long bucket = bucket(key);
+        ByteBuffer chunk = chunks[(int) (bucket >>> bucketsPerChunkShift)];
+        int offset = offset(bucket);
+        for (int entry = offset; entry < offset + 32; entry += 16) {
+            long data = chunk.getLong(entry + 8);
+            if ((chunk.getLong(entry) ^ data) == key && data != 0)
+                return data;
+        }
+        return 0;
+    }
+
+    /**
+     * Stores a search result in the depth-preferred entry when it is at least
+     * as deep as the result there, or is for the same position, and in the
+     * always-replace entry otherwise.
+     */
+    @Override
+    public void store(long key, int move, int depth, int bound, int score) {
+        long bucket = bucket(key);
+        ByteBuffer chunk = chunks[(int) (bucket >>> bucketsPerChunkShift)];
+        int entry = offset(bucket);
+        long old = chunk.getLong(entry + 8);
+        if (depth < ITranspositionTable.depth(old) && (chunk.getLong(entry) ^ old) != key)
+            entry += 16;
+        long data = ITranspositionTable.pack(move, depth, bound, score);
+        chunk.putLong(entry, key ^ data);
+        chunk.putLong(entry + 8, data);
+    }
+
+    @Override
+    public void clear() {
+        for (ByteBuffer chunk : chunks) {
+            for (int i = 0; i < chunk.capacity(); i += 8) {
+                chunk.putLong(i, 0);
+            }
+        }
+    }
+
+    /**
+     * Writes the table to its file now, if it is mapped to one.
+     */
+    public void flush() {
+        for (ByteBuffer chunk : chunks) {
+            if (chunk instanceof MappedByteBuffer)
+                ((MappedByteBuffer) chunk).force();
+        }
+    }
+
+    /**
+     * @return Size of the table in bytes
+     */
+    public long getBytes() {
+        return (bucketMask + 1) << BUCKET_SHIFT;
+    }
+
+    private long bucket(long key) {
+        return (key ^ key >>> 32) & bucketMask;
+    }
+
+    private int offset(long bucket) {
+        return (int) (bucket << BUCKET_SHIFT) & (chunks[0].capacity() - 1);
+    }
+}
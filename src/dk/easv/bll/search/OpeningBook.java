@@ -0,0 +1,121 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.Symmetry;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Book of precomputed moves for the first plies of the game, made with
+ * OpeningBookBuilder.
+ *
+ * The book file is a sorted array of big-endian longs, one per position: the
+ * Zobrist key of the position with its lowest 7 bits replaced by the best
+ * move. The file is memory-mapped and searched with a binary search, so a
+ * lookup takes microseconds and the book is not read into the heap.
+ *
+ * Positions that are the same up to rotating or mirroring the board are
+ * stored once, under their canonical key (see Symmetry).
+ */
+public class OpeningBook {
+
+    private static final long MOVE_BITS = 0x7F;
+    private static final OpeningBook EMPTY = new OpeningBook(LongBuffer.allocate(0));
+
+    private static OpeningBook shared = null;
+
+    private final LongBuffer entries;
+
+    private OpeningBook(LongBuffer entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Maps a book file.
+     * @param file Book written by OpeningBookBuilder
+     * @throws IOException If the file could not be mapped
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.BIG_ENDIAN).asLongBuffer());
+        }
+    }
+
+    /**
+     * The book used by all bots, from the file in the system property
+     * uttt.book.file. Without the property, or when the file cannot be read,
+     * the book is empty.
+     */
+    public static synchronized OpeningBook shared() {
+        if (shared == null) {
+            String file = System.getProperty("uttt.book.file");
+            shared = EMPTY;
+            if (file != null && Files.exists(Paths.get(file))) {
+                try {
+                    shared = open(Paths.get(file));
+                }
+                catch (IOException ex) {
+                    System.err.println("Could not map " + file + ", playing without a book: " + ex);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @param state The position to look up
+     * @return The book move of the position, or null if it is not in the book
+     */
+    public IMove lookup(IGameState state) {
+        // Every search bot asks on every move, usually with no book at all
+        if (entries.limit() == 0)
+            return null;
+        int[] transform = new int[1];
+        long key = Symmetry.canonicalKey(state, transform) & ~MOVE_BITS;
+        int low = 0;
+        int high = entries.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long entry = entries.get(middle) & ~MOVE_BITS;
+            if (entry < key)
+                low = middle + 1;
+            else if (entry > key)
+                high = middle - 1;
+            else {
+                int move = Symmetry.revertCell(transform[0], (int) (entries.get(middle) & MOVE_BITS));
+                // Guards against another position with the same key
+                return state.getField().isInActiveMicroboard(move / 9, move % 9)
+                        && state.getField().getCellOwner(move / 9, move % 9) == IField.NO_OWNER
+                        ? Move.of(move) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Number of positions in the book
+     */
+    public int size() {
+        return entries.limit();
+    }
+
+    /**
+     * Makes the book entry of a position.
+     * @param canonicalKey Key from Symmetry.canonicalKey
+     * @param canonicalMove Cell index of the move in the canonical orientation, see Symmetry.cell
+     */
+    static long entry(long canonicalKey, int canonicalMove) {
+        return canonicalKey & ~MOVE_BITS | canonicalMove;
+    }
+}
@@ -0,0 +1,124 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.Symmetry;
+import dk.easv.bll.move.IMove;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Builds an OpeningBook offline by searching every position of the first
+ * plies of the game with AlphaBetaSearch.
+ *
+ * Usage: OpeningBookBuilder file [plies] [depth]
+ *
+ * All positions up to the given number of plies (default 3) are searched to
+ * the given depth (default 8). Positions that are rotations or mirrors of one
+ * already searched are skipped.
+ */
+public class OpeningBookBuilder {
+
+    private static final int DEFAULT_PLIES = 3;
+    private static final int DEFAULT_DEPTH = 8;
+
+    private final AlphaBetaSearch search = new AlphaBetaSearch();
+    private final Set<Long> positions = new HashSet<>();
+    private final int[][] moves;
+    private final int plies;
+    private final int depth;
+    private long[] entries = new long[1024];
+    private int count = 0;
+    private GameState state;
+    private GameManager manager;
+
+    /**
+     * @param plies Number of plies from the start of the game to put in the book
+     * @param depth Search depth for every position
+     */
+    public OpeningBookBuilder(int plies, int depth) {
+        this.plies = plies;
+        this.depth = depth;
+        moves = new int[plies][81];
+        search.setTranspositionTable(new TranspositionTable(1 << 20));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: OpeningBookBuilder file [plies] [depth]");
+            System.exit(1);
+        }
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DEPTH;
+        OpeningBookBuilder builder = new OpeningBookBuilder(plies, depth);
+        long start = System.currentTimeMillis();
+        builder.build();
+        builder.write(Paths.get(args[0]));
+        System.out.println("Wrote " + builder.size() + " positions to " + args[0]
+                + " in " + (System.currentTimeMillis() - start) / 1000 + " s");
+    }
+
+    /**
+     * Searches all positions of the book.
+     */
+    public void build() {
+        state = new GameState();
+        manager = new GameManager(state);
+        positions.clear();
+        count = 0;
+        add(0);
+    }
+
+    /**
+     * Writes the book, sorted by key.
+     * @param file The book file, it is replaced
+     * @throws IOException If the file could not be written
+     */
+    public void write(Path file) throws IOException {
+        long[] sorted = Arrays.copyOf(entries, count);
+        Arrays.sort(sorted);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            for (long entry : sorted) {
+                out.writeLong(entry);
+            }
+        }
+    }
+
+    /**
+     * @return Number of positions in the book
+     */
+    public int size() {
+        return count;
+    }
+
+    private void add(int ply) {
+        if (ply == plies || manager.getGameOver() != GameManager.GameOverState.Active)
+            return;
+        int[] transform = new int[1];
+        long key = Symmetry.canonicalKey(state, transform);
+        if (!positions.add(key))
+            return;
+        IMove best = search.search(state, Long.MAX_VALUE, depth);
+        if (best == null)
+            return;
+        if (count == entries.length)
+            entries = Arrays.copyOf(entries, count * 2);
+        int move = best.getX() * 9 + best.getY();
+        entries[count++] = OpeningBook.entry(key, Symmetry.cell(transform[0], move));
+
+        int[] buffer = moves[ply];
+        int available = state.getField().getAvailableMoves(buffer);
+        for (int i = 0; i < available; i++) {
+            manager.applyMove(buffer[i] / 9, buffer[i] % 9);
+            add(ply + 1);
+            manager.undoMove();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+
+/**
+ * Lazy SMP: several alpha-beta searches of the same position on different
+ * threads, sharing one transposition table.
+ *
+ * The searches do not communicate other than through the table. Helpers start
+ * one ply deeper every second thread and try the root moves in another order,
+ * so they fill the table with results the main search can cut off with. The
+ * move of the main search is played, and the helpers are stopped as soon as
+ * it returns.
+ */
+public class ParallelAlphaBetaSearch {
+
+    private static final int DEFAULT_TABLE_ENTRIES = 1 << 20;
+
+    private final AlphaBetaSearch[] searches;
+    private final ITranspositionTable table;
+
+    public ParallelAlphaBetaSearch(int threads) {
+        this(threads, new TranspositionTable(DEFAULT_TABLE_ENTRIES));
+    }
+
+    /**
+     * @param threads Number of threads searching the position
+     * @param table Table shared by all threads
+     */
+    public ParallelAlphaBetaSearch(int threads, ITranspositionTable table) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed: " + threads);
+        this.table = table;
+        searches = new AlphaBetaSearch[threads];
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new AlphaBetaSearch();
+            searches[i].setTranspositionTable(table);
+            searches[i].setHelper(i);
+        }
+    }
+
+    /**
+     * Searches the position on all threads until the deadline.
+     * @param position The position to search, it is copied
+     * @param deadline Deadline in System.nanoTime() time
+     * @return The best move of the main search, or null if there are no moves
+     */
+    public IMove search(IGameState position, long deadline) {
+        GameState root = new GameState(position);
+        Thread[] helpers = new Thread[searches.length - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            AlphaBetaSearch helper = searches[i + 1];
+            helper.resume();
+            helpers[i] = new Thread(() -> helper.searchUnlessStopped(root, deadline, AlphaBetaSearch.MAX_PLY),
+                    "Lazy SMP helper " + i);
+            helpers[i].setDaemon(true);
+            helpers[i].start();
+        }
+        IMove move = searches[0].search(root, deadline);
+        for (int i = 0; i < helpers.length; i++) {
+            searches[i + 1].stop();
+            try {
+                helpers[i].join();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return move;
+    }
+
+    /**
+     * @return Number of threads searching the position
+     */
+    public int getThreads() {
+        return searches.length;
+    }
+
+    /**
+     * @return Depth of the last completed iteration of the main search
+     */
+    public int getCompletedDepth() {
+        return searches[0].getCompletedDepth();
+    }
+
+    /**
+     * @return Number of positions visited by the last search, on all threads
+     */
+    public long getNodes() {
+        long nodes = 0;
+        for (AlphaBetaSearch search : searches) {
+            nodes += search.getNodes();
+        }
+        return nodes;
+    }
+
+    public ITranspositionTable getTranspositionTable() {
+        return table;
+    }
+}
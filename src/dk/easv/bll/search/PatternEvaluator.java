@@ -0,0 +1,218 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.field.IField;
+import dk.easv.bll.field.WinOracle;
+
+/**
+ * Static evaluation of positions from precomputed microboard patterns.
+ *
+ * Every one of the 3^9 = 19683 fillings of a microboard has an index, the sum
+ * of digit * 3^bit over its cells, with digit 0 for empty, 1 for player 0 and
+ * 2 for player 1. The features of all fillings (owner, open two in a rows of
+ * each player, and whether the board is dead, i.e. no player can still get
+ * three in a row) are computed once, and every evaluator turns them into a
+ * table of scores with its weights. Evaluating a position is then nine table
+ * lookups, plus a pass over the macroboard lines for won microboards.
+ *
+ * The weights are indexed by the constants of this class, see getDefaultWeights.
+ */
+public class PatternEvaluator {
+
+    /**
+     * Weight of a won microboard.
+     */
+    public static final int WON = 0;
+    /**
+     * Weight of two in a row with the third cell empty.
+     */
+    public static final int OPEN_TWO = 1;
+    /**
+     * Weight of owning the center cell of an undecided microboard.
+     */
+    public static final int CENTER_CELL = 2;
+    /**
+     * Weight of owning a corner cell of an undecided microboard.
+     */
+    public static final int CORNER_CELL = 3;
+    /**
+     * Weight of two won microboards in a macroboard line the opponent can not block anymore.
+     */
+    public static final int MACRO_TWO = 4;
+    /**
+     * Factor on the microboard score of the center microboard.
+     */
+    public static final int CENTER_BOARD = 5;
+    /**
+     * Factor on the microboard score of the corner microboards.
+     */
+    public static final int CORNER_BOARD = 6;
+    /**
+     * Factor on the microboard score of the edge microboards.
+     */
+    public static final int EDGE_BOARD = 7;
+
+    /**
+     * Number of fillings of a microboard.
+     */
+    public static final int PATTERNS = 19683;
+
+    private static final int[] DEFAULT_WEIGHTS = {100, 5, 0, 0, 200, 4, 3, 2};
+
+    // Index of the pattern with the cells of a 9-bit mask set to digit 1
+    private static final int[] TERNARY = new int[512];
+    private static final byte[] OWNER = new byte[PATTERNS];
+    private static final byte[][] OPEN_TWOS = new byte[2][PATTERNS];
+    private static final boolean[] DEAD = new boolean[PATTERNS];
+    private static final int CENTER = 1 << 4;
+    private static final int CORNERS = 1 | 1 << 2 | 1 << 6 | 1 << 8;
+
+    static {
+        for (int mask = 0; mask < 512; mask++) {
+            int index = 0;
+            for (int bit = 8; bit >= 0; bit--) {
+                index = index * 3 + (mask >> bit & 1);
+            }
+            TERNARY[mask] = index;
+        }
+        for (int pattern = 0; pattern < PATTERNS; pattern++) {
+            int[] masks = masks(pattern);
+            OWNER[pattern] = WinOracle.isWin(masks[0]) ? 0
+                    : WinOracle.isWin(masks[1]) ? 1
+                    : WinOracle.isFull(masks[0] | masks[1]) ? (byte) IField.TIED
+                    : (byte) IField.NO_OWNER;
+            boolean open = false;
+            for (int i = 0; i < WinOracle.LINE_COUNT; i++) {
+                int line = WinOracle.line(i);
+                for (int player = 0; player < 2; player++) {
+                    if ((masks[1 - player] & line) == 0) {
+                        open = true;
+                        if (Integer.bitCount(masks[player] & line) == 2)
+                            OPEN_TWOS[player][pattern]++;
+                    }
+                }
+            }
+            DEAD[pattern] = OWNER[pattern] == IField.NO_OWNER && !open;
+        }
+    }
+
+    /**
+     * The evaluator with the default weights. It is made after the pattern
+     * features, which its constructor reads.
+     */
+    public static final PatternEvaluator DEFAULT = new PatternEvaluator(DEFAULT_WEIGHTS);
+
+    private final int[] weights;
+    // Score of each pattern for player 0
+    private final int[] scores = new int[PATTERNS];
+    private final int[] boardFactors = new int[9];
+
+    /**
+     * @param weights One weight per constant of this class, it is copied
+     */
+    public PatternEvaluator(int[] weights) {
+        if (weights.length != DEFAULT_WEIGHTS.length)
+            throw new IllegalArgumentException("Expected " + DEFAULT_WEIGHTS.length + " weights, got " + weights.length);
+        this.weights = weights.clone();
+        for (int pattern = 0; pattern < PATTERNS; pattern++) {
+            scores[pattern] = score(pattern);
+        }
+        for (int board = 0; board < 9; board++) {
+            boardFactors[board] = board == 4 ? weights[CENTER_BOARD]
+                    : (CORNERS & 1 << board) != 0 ? weights[CORNER_BOARD]
+                    : weights[EDGE_BOARD];
+        }
+    }
+
+    /**
+     * @return A copy of the weights of DEFAULT, as a start for tuning
+     */
+    public static int[] getDefaultWeights() {
+        return DEFAULT_WEIGHTS.clone();
+    }
+
+    /**
+     * @return A copy of the weights
+     */
+    public int[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Evaluates a position.
+     * @param field The position
+     * @param player The player to score the position for
+     * @return The score, positive when the position is good for the player
+     */
+    public int evaluate(IField field, int player) {
+        int value = 0;
+        for (int board = 0; board < 9; board++) {
+            value += boardFactors[board] * scores[pattern(field.getCellMask(board / 3, board % 3, 0),
+                    field.getCellMask(board / 3, board % 3, 1))];
+        }
+        int won0 = field.getMicroboardMask(0);
+        int won1 = field.getMicroboardMask(1);
+        int blocked = field.getMicroboardMask(IField.TIED);
+        for (int i = 0; i < WinOracle.LINE_COUNT; i++) {
+            int line = WinOracle.line(i);
+            if (((won1 | blocked) & line) == 0 && Integer.bitCount(won0 & line) == 2)
+                value += weights[MACRO_TWO];
+            if (((won0 | blocked) & line) == 0 && Integer.bitCount(won1 & line) == 2)
+                value -= weights[MACRO_TWO];
+        }
+        return player == 0 ? value : -value;
+    }
+
+    /**
+     * @param cells0 9-bit mask of the cells of player 0, as in IField.getCellMask
+     * @param cells1 9-bit mask of the cells of player 1
+     * @return The index of the microboard pattern
+     */
+    public static int pattern(int cells0, int cells1) {
+        return TERNARY[cells0] + 2 * TERNARY[cells1];
+    }
+
+    /**
+     * @return 0 or 1 for the player with three in a row, IField.TIED for a full board, otherwise IField.NO_OWNER
+     */
+    public static int getOwner(int pattern) {
+        return OWNER[pattern];
+    }
+
+    /**
+     * @return Number of lines where the player has two cells and the third is empty
+     */
+    public static int getOpenTwos(int pattern, int player) {
+        return OPEN_TWOS[player][pattern];
+    }
+
+    /**
+     * @return Returns true when the board is undecided and no player can get three in a row anymore, otherwise returns false.
+     */
+    public static boolean isDead(int pattern) {
+        return DEAD[pattern];
+    }
+
+    private int score(int pattern) {
+        int owner = OWNER[pattern];
+        if (owner == 0)
+            return weights[WON];
+        if (owner == 1)
+            return -weights[WON];
+        if (owner == IField.TIED || DEAD[pattern])
+            return 0;
+        int[] masks = masks(pattern);
+        return weights[OPEN_TWO] * (OPEN_TWOS[0][pattern] - OPEN_TWOS[1][pattern])
+                + weights[CENTER_CELL] * (Integer.bitCount(masks[0] & CENTER) - Integer.bitCount(masks[1] & CENTER))
+                + weights[CORNER_CELL] * (Integer.bitCount(masks[0] & CORNERS) - Integer.bitCount(masks[1] & CORNERS));
+    }
+
+    private static int[] masks(int pattern) {
+        int[] masks = new int[2];
+        for (int bit = 0; bit < 9; bit++, pattern /= 3) {
+            int digit = pattern % 3;
+            if (digit != 0)
+                masks[digit - 1] |= 1 << bit;
+        }
+        return masks;
+    }
+}
@@ -0,0 +1,268 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+/**
+ * Depth-first proof-number search (df-pn) for forced wins of the player to move.
+ *
+ * The player to move at the start (the attacker) needs one winning move in
+ * the positions where it is to move (OR nodes) and a win against every reply
+ * in the positions where the opponent is to move (AND nodes). A tie counts as
+ * a failure of the attacker. The proof number of a position is the number of
+ * unsolved positions below it that must be proven to prove the win, and the
+ * disproof number the same for refuting it. The search always goes to the
+ * most proving position, so it finds narrow forced lines deep in the tree
+ * that a full-width search or random playouts do not see.
+ *
+ * The numbers are kept in a table instead of a tree, and a position is only
+ * searched until its numbers pass thresholds given by its parent (Nagai's
+ * df-pn, with the 1 + 1/4 threshold trick to avoid thrashing between
+ * siblings). A search gives up when the node budget or the deadline is used.
+ */
+public class ProofNumberSearch {
+
+    public static final int UNKNOWN = 0;
+    /**
+     * The player to move can force a win.
+     */
+    public static final int WIN = 1;
+    /**
+     * The player to move can not force a win, the opponent can at least tie.
+     */
+    public static final int NO_WIN = 2;
+
+    private static final int INFINITY = 100_000_000;
+    private static final long DEFAULT_NODE_BUDGET = 200_000;
+    private static final int DEFAULT_TABLE_BITS = 20;
+    // Table keys of positions searched for player 1 as the attacker
+    private static final long ATTACKER_1 = 0x6A09E667F3BCC909L;
+
+    private final int tableBits;
+    private long[] keys;
+    private int[] proofs;
+    private int[] disproofs;
+    private byte[] bestMoves;
+    private final int[][] moves = new int[82][81];
+    private final long[][] childKeys = new long[82][81];
+    private long nodeBudget = DEFAULT_NODE_BUDGET;
+
+    private GameState state;
+    private GameManager manager;
+    private int attacker;
+    private long deadline;
+    private long nodes;
+    private boolean aborted;
+    private volatile boolean stopped = false;
+    private int bestMove;
+
+    public ProofNumberSearch() {
+        this(DEFAULT_TABLE_BITS);
+    }
+
+    /**
+     * @param tableBits The table has 2^tableBits entries of 17 bytes, allocated on the first solve
+     */
+    public ProofNumberSearch(int tableBits) {
+        if (tableBits < 1 || tableBits > 30)
+            throw new IllegalArgumentException("Table bits must be between 1 and 30: " + tableBits);
+        this.tableBits = tableBits;
+    }
+
+    /**
+     * @param nodeBudget Number of positions a search may expand before it gives up
+     */
+    public void setNodeBudget(long nodeBudget) {
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * Tries to prove that the player to move can force a win.
+     * @param position The position to solve, it is copied
+     * @param deadline Deadline in System.nanoTime() time
+     * @return WIN, NO_WIN, or UNKNOWN if the budget or the time ran out first
+     */
+    public int solve(IGameState position, long deadline) {
+        bestMove = -1;
+        state = new GameState(position);
+        manager = new GameManager(state);
+        manager.setCurrentPlayer(state.getMoveNumber() % 2);
+        if (GameManager.isGameOver(state.getField()))
+            return UNKNOWN;
+        if (keys == null) {
+            keys = new long[1 << tableBits];
+            proofs = new int[1 << tableBits];
+            disproofs = new int[1 << tableBits];
+            bestMoves = new byte[1 << tableBits];
+        }
+        attacker = manager.getCurrentPlayer();
+        this.deadline = deadline;
+        nodes = 0;
+        aborted = false;
+
+        long key = key();
+        search(0, key, INFINITY, INFINITY);
+        int slot = slot(key);
+        if (keys[slot] != key)
+            return UNKNOWN;
+        if (proofs[slot] == 0) {
+            bestMove = bestMoves[slot];
+            return WIN;
+        }
+        return disproofs[slot] == 0 ? NO_WIN : UNKNOWN;
+    }
+
+    /**
+     * @return The winning move of the last solve, or null if no win was proven
+     */
+    public IMove getBestMove() {
+        return bestMove < 0 ? null : Move.of(bestMove);
+    }
+
+    /**
+     * Solves the position and returns a move that wins for sure.
+     * @param position The position to solve, it is copied
+     * @param deadline Deadline in System.nanoTime() time
+     * @return A winning move, or null if no win was proven
+     */
+    public IMove findWinningMove(IGameState position, long deadline) {
+        return solve(position, deadline) == WIN ? getBestMove() : null;
+    }
+
+    /**
+     * Stops a running solve from another thread, it gives up as if its budget
+     * was used. Solves started after it give up within their first thousand positions, until resume.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Lets solves run again after stop.
+     */
+    public void resume() {
+        stopped = false;
+    }
+
+    /**
+     * @return Number of positions expanded by the last solve
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Forgets all searched positions.
+     */
+    public void clear() {
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = 0;
+            }
+        }
+    }
+
+    // Searches the current position until its numbers reach the thresholds, and stores them
+    private void search(int ply, long key, int proofThreshold, int disproofThreshold) {
+        if (++nodes > nodeBudget || (nodes & 1023) == 0 && (stopped || System.nanoTime() >= deadline)) {
+            aborted = true;
+            return;
+        }
+        GameManager.GameOverState gameOver = manager.getGameOver();
+        if (gameOver != GameManager.GameOverState.Active) {
+            boolean won = gameOver == GameManager.GameOverState.Win && manager.getCurrentPlayer() != attacker;
+            store(key, won ? 0 : INFINITY, won ? INFINITY : 0, -1);
+            return;
+        }
+        boolean or = manager.getCurrentPlayer() == attacker;
+        int[] buffer = moves[ply];
+        long[] children = childKeys[ply];
+        int count = state.getField().getAvailableMoves(buffer);
+        // Positions after each move, where the game ends they are solved right away
+        for (int i = 0; i < count; i++) {
+            manager.applyMove(buffer[i] / 9, buffer[i] % 9);
+            children[i] = key();
+            gameOver = manager.getGameOver();
+            if (gameOver == GameManager.GameOverState.Win)
+                store(children[i], or ? 0 : INFINITY, or ? INFINITY : 0, -1);
+            else if (gameOver == GameManager.GameOverState.Tie)
+                store(children[i], INFINITY, 0, -1);
+            manager.undoMove();
+        }
+
+        int proof;
+        int disproof;
+        while (true) {
+            // OR node: proof is the smallest child proof, disproof the sum of child disproofs.
+            // AND node: the other way round.
+            int smallest = INFINITY;
+            int second = INFINITY;
+            long sum = 0;
+            int best = 0;
+            for (int i = 0; i < count; i++) {
+                int slot = slot(children[i]);
+                boolean known = keys[slot] == children[i];
+                int childProof = known ? proofs[slot] : 1;
+                int childDisproof = known ? disproofs[slot] : 1;
+                int minimized = or ? childProof : childDisproof;
+                sum += or ? childDisproof : childProof;
+                if (minimized < smallest) {
+                    second = smallest;
+                    smallest = minimized;
+                    best = i;
+                }
+                else if (minimized < second)
+                    second = minimized;
+            }
+            int summed = (int) Math.min(sum, INFINITY);
+            if (count == 0)
+                smallest = INFINITY; // no moves, a tie
+            proof = or ? smallest : summed;
+            disproof = or ? summed : smallest;
+            if (proof >= proofThreshold || disproof >= disproofThreshold || aborted) {
+                store(key, proof, disproof, count == 0 ? -1 : buffer[best]);
+                return;
+            }
+
+            int slot = slot(children[best]);
+            boolean known = keys[slot] == children[best];
+            int childProof = known ? proofs[slot] : 1;
+            int childDisproof = known ? disproofs[slot] : 1;
+            int narrow = (int) Math.min(INFINITY, second + (long) second / 4 + 1);
+            int childProofThreshold;
+            int childDisproofThreshold;
+            if (or) {
+                childProofThreshold = Math.min(proofThreshold, narrow);
+                childDisproofThreshold = disproofThreshold - disproof + childDisproof;
+            }
+            else {
+                childProofThreshold = proofThreshold - proof + childProof;
+                childDisproofThreshold = Math.min(disproofThreshold, narrow);
+            }
+            manager.applyMove(buffer[best] / 9, buffer[best] % 9);
+            search(ply + 1, children[best], childProofThreshold, childDisproofThreshold);
+            manager.undoMove();
+        }
+    }
+
+    private long key() {
+        long key = state.getZobristKey();
+        return attacker == 0 ? key : key ^ ATTACKER_1;
+    }
+
+    private int slot(long key) {
+        return (int) (key ^ key >>> 32) & (keys.length - 1);
+    }
+
+    // Always replaces, so a position searched last can always be read back by its parent
+    private void store(long key, int proof, int disproof, int move) {
+        int slot = slot(key);
+        keys[slot] = key;
+        proofs[slot] = proof;
+        disproofs[slot] = disproof;
+        bestMoves[slot] = (byte) move;
+    }
+}
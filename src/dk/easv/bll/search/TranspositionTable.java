@@ -0,0 +1,63 @@
+package dk.easv.bll.search;
+
+import java.util.Arrays;
+
+/**
+ * Lock-free transposition table on the heap.
+ *
+ * An entry is two longs: the packed data, and the Zobrist key XOR the data.
+ * Both are written with plain 64-bit stores and no locking. When two threads
+ * write the same slot at once, a reader may see the key word of one and the
+ * data of the other, but then key ^ data no longer gives the probed key and
+ * the entry is simply treated as a miss.
+ *
+ * For big tables see OffHeapTranspositionTable, which keeps the entries out
+ * of the garbage collected heap.
+ */
+public class TranspositionTable implements ITranspositionTable {
+
+    private final long[] table;
+    private final int mask;
+
+    /**
+     * @param entries Number of entries, rounded down to a power of two
+     */
+    public TranspositionTable(int entries) {
+        if (entries < 1 || entries > 1 << 29)
+            throw new IllegalArgumentException("Entries must be between 1 and 2^29: " + entries);
+        int slots = Integer.highestOneBit(entries);
+        table = new long[slots * 2];
+        mask = slots - 1;
+    }
+
+    @Override
+    public long probe(long key) {
+        int slot = slot(key);
+        long data = table[slot + 1];
+        return (table[slot] ^ data) == key ? data : 0;
+    }
+
+    /**
+     * Stores a search result, replacing the slot unless it holds a deeper
+     * result for the same position.
+     */
+    @Override
+    public void store(long key, int move, int depth, int bound, int score) {
+        int slot = slot(key);
+        long old = table[slot + 1];
+        if ((table[slot] ^ old) == key && depth < ITranspositionTable.depth(old) && bound != EXACT)
+            return;
+        long data = ITranspositionTable.pack(move, depth, bound, score);
+        table[slot] = key ^ data;
+        table[slot + 1] = data;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(table, 0);
+    }
+
+    private int slot(long key) {
+        return ((int) (key ^ key >>> 32) & mask) << 1;
+    }
+}
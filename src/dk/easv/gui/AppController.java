@@ -4,6 +4,7 @@ import com.jfoenix.controls.*;
 import dk.easv.bll.bot.IBot;
 import dk.easv.bll.game.GameManager;
 import dk.easv.bll.game.stats.GameResult;
+import dk.easv.bll.search.EndgameSolver;
 import dk.easv.dal.DynamicBotClassHandler;
 import static dk.easv.gui.util.FontAwesomeHelper.getFontAwesomeIconFromPlayerId;
 import static dk.easv.dal.DynamicBotClassHandler.loadBotList;
@@ -175,7 +176,10 @@ public class AppController implements Initializable {
     }
     
     private class Simulator implements Runnable{
+        private static final long ADJUDICATE_NODES = 200_000;
         private final long amountOfSimulations;
+        // Set the system property uttt.adjudicate to end games once the result is proven
+        private final EndgameSolver endgame = Boolean.getBoolean("uttt.adjudicate") ? new EndgameSolver() : null;
         private IBot bot1;
         private IBot bot2;
         public Simulator(
@@ -184,6 +188,8 @@ public class AppController implements Initializable {
                 Class<? extends IBot> b2) {
 
             this.amountOfSimulations=amountOfSimulations;
+            if (endgame != null)
+                endgame.setNodeBudget(ADJUDICATE_NODES);
             try {
                 this.bot1 = b1.newInstance();
                 this.bot2 = b2.newInstance();
@@ -202,12 +208,15 @@ public class AppController implements Initializable {
                 BoardModel model = new BoardModel(bot1, bot2);
                 int currentPlayer = 0;
                 while (model.getGameOverState() == GameManager.GameOverState.Active
-                         && model.getGameState().getField().getAvailableMoves().size()>0) {
+                         && model.getGameState().getField().hasAvailableMoves()) {
                     currentPlayer = model.getCurrentPlayer();
                     Boolean valid = model.doMove();
                     if (!valid) {
                         throw new RuntimeException("Bot not following rules!");
                     }
+                    if (endgame != null && model.getGameOverState() == GameManager.GameOverState.Active
+                            && model.adjudicate(endgame, Long.MAX_VALUE))
+                        currentPlayer = model.getCurrentPlayer();
                 }
                 // There is a tie
                 if (model.getGameOverState().equals(GameManager.GameOverState.Tie)) {
@@ -241,12 +250,15 @@ public class AppController implements Initializable {
                 BoardModel model = new BoardModel(bot2, bot1);
                 int currentPlayer = 0;
                 while (model.getGameOverState() == GameManager.GameOverState.Active
-                         && model.getGameState().getField().getAvailableMoves().size()>0) {
+                         && model.getGameState().getField().hasAvailableMoves()) {
                     currentPlayer = model.getCurrentPlayer();
                     Boolean valid = model.doMove();
                     if (!valid) {
                         throw new RuntimeException("Bot not following rules!");
                     }
+                    if (endgame != null && model.getGameOverState() == GameManager.GameOverState.Active
+                            && model.adjudicate(endgame, Long.MAX_VALUE))
+                        currentPlayer = model.getCurrentPlayer();
                 }
                 // There is a tie
                 if (model.getGameOverState().equals(GameManager.GameOverState.Tie)) {
@@ -2,9 +2,11 @@ package dk.easv.gui;
 
 
 import dk.easv.bll.bot.IBot;
+import dk.easv.bll.field.IField;
 import dk.easv.bll.game.*;
 import dk.easv.bll.game.IGameState;
 import dk.easv.bll.move.IMove;
+import dk.easv.bll.search.EndgameSolver;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
 
@@ -57,6 +59,21 @@ public class BoardModel implements Observable{
         game.setGameOver(GameManager.GameOverState.Win);
    }
 
+    // Ends the game early if the solver can prove its result
+    public boolean adjudicate(EndgameSolver solver, long deadline) {
+        int winner = solver.adjudicate(game.getCurrentState(), deadline);
+        if (winner == IField.NO_OWNER)
+            return false;
+        if (winner == IField.TIED)
+            game.setGameOver(GameManager.GameOverState.Tie);
+        else {
+            game.setCurrentPlayer(winner);
+            game.setGameOver(GameManager.GameOverState.Win);
+        }
+        notifyAllListeners();
+        return true;
+    }
+
     public boolean doMove() {
         boolean valid = game.updateGame();
         if(valid)
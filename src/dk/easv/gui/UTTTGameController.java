@@ -75,7 +75,7 @@ public class UTTTGameController implements Initializable {
 
             Thread t = new Thread(() -> {
                 while (model.getGameOverState() == GameManager.GameOverState.Active
-                        && model.getGameState().getField().getAvailableMoves().size()>0) {
+                        && model.getGameState().getField().hasAvailableMoves()) {
                     // FIX HERE, KEEPS ASKING FOR VALID MOVE IF BOT PLAYS INVALID
                     boolean isValid = doBotMove();
                     try {
@@ -244,7 +244,7 @@ public class UTTTGameController implements Initializable {
                         JFXButton btn = new JFXButton("");
                         btn.setButtonType(JFXButton.ButtonType.RAISED);
                         btn.getStyleClass().add("tictaccell");
-                        btn.setUserData(new Move(x + i * 3, y + k * 3));
+                        btn.setUserData(Move.of(x + i * 3, y + k * 3));
                         btn.setFocusTraversable(false);
                         btn.setOnMouseClicked(
                                 event -> {
@@ -273,15 +273,8 @@ public class UTTTGameController implements Initializable {
 
     private void checkAndLockIfGameEnd(int currentPlayer) {
         if (model.getGameOverState() != GameManager.GameOverState.Active) {
-            String[][] macroboard = model.getMacroboard();
             // Lock game
-            for (int i = 0; i < 3; i++) {
-                for (int k = 0; k < 3; k++) {
-                    if (macroboard[i][k].equals(IField.AVAILABLE_FIELD)) {
-                        macroboard[i][k] = IField.EMPTY_FIELD;
-                    }
-                }
-            }
+            model.getGameState().getField().setActiveMicroboards(0);
             if (model.getGameOverState().equals(GameManager.GameOverState.Tie)) {
                 Platform.runLater(() -> showWinnerPane("TIE"));
             }